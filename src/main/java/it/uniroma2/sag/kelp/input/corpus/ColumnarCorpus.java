@@ -0,0 +1,363 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.corpus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
+
+/**
+ * A corpus of dependency graphs stored column by column (struct of arrays).
+ * Every token of the corpus occupies one cell in a set of int arrays (id,
+ * head, offsets and the ids of its surface, lemma, part of speech and relation
+ * labels), while the labels themselves are interned in a SymbolTable, so
+ * that label ids can be compared across sentences. Per-sentence arrays store
+ * where the tokens and the text of each sentence begin.
+ * <p>
+ * Graphs are appended with {@link #add(DependencyGraph)}, typically with the
+ * output of {@link it.uniroma2.sag.kelp.input.parser.DependencyParser#parse(String)},
+ * and are read back with {@link #getGraph(int)}, which returns a short-lived
+ * DependencyGraph that can be given to the TreeRepresentationGenerator methods.
+ * <p>
+ * Only the standard properties of nodes and relations are stored; every node
+ * is expected to have at most one incoming relation and governors are
+ * identified by their id, which must be positive, as in the graphs produced by
+ * the parsers of this module.
+ * <p>
+ * This class is not thread-safe while graphs are being added.
+ */
+public class ColumnarCorpus implements Iterable<DependencyGraph> {
+	/**
+	 * Head value of a token that is the target of the root relation.
+	 */
+	public static final int ROOT_HEAD = 0;
+	/**
+	 * Head value of a token that is not the target of any relation. Governors
+	 * have positive ids, so this value cannot be the id of a governor.
+	 */
+	public static final int NO_HEAD = -1;
+	/**
+	 * Label id of a missing label.
+	 */
+	public static final int NO_LABEL = -1;
+
+	private static final int INITIAL_SENTENCES = 16;
+	private static final int INITIAL_TOKENS = 256;
+
+	// token columns
+	private int[] ids;
+	private int[] heads;
+	private int[] starts;
+	private int[] ends;
+	private int[] surfaces;
+	private int[] lemmas;
+	private int[] posTags;
+	private int[] relationTypes;
+	private int tokenCount;
+
+	// sentence columns
+	private int[] tokenOffsets;
+	private int[] textOffsets;
+	private int[] roots;
+	private int[] parserNames;
+	private int[] parserVersions;
+	private int sentenceCount;
+	private final StringBuilder text;
+
+	private final SymbolTable symbolTable;
+
+	/**
+	 * Creates a corpus whose labels are interned in a SymbolTable of its own.
+	 */
+	public ColumnarCorpus() {
+		this(new SymbolTable());
+	}
+
+	/**
+	 * Creates a corpus whose labels are interned in the given SymbolTable,
+	 * e.g. to compare label ids across corpora.
+	 *
+	 * @param symbolTable
+	 */
+	public ColumnarCorpus(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+		ids = new int[INITIAL_TOKENS];
+		heads = new int[INITIAL_TOKENS];
+		starts = new int[INITIAL_TOKENS];
+		ends = new int[INITIAL_TOKENS];
+		surfaces = new int[INITIAL_TOKENS];
+		lemmas = new int[INITIAL_TOKENS];
+		posTags = new int[INITIAL_TOKENS];
+		relationTypes = new int[INITIAL_TOKENS];
+		tokenOffsets = new int[INITIAL_SENTENCES + 1];
+		textOffsets = new int[INITIAL_SENTENCES + 1];
+		roots = new int[INITIAL_SENTENCES];
+		parserNames = new int[INITIAL_SENTENCES];
+		parserVersions = new int[INITIAL_SENTENCES];
+		text = new StringBuilder();
+	}
+
+	/**
+	 * Appends a dependency graph to this corpus.
+	 *
+	 * @param graph
+	 *            the graph to be added.
+	 * @return the index of the graph in this corpus.
+	 * @throws IllegalArgumentException
+	 *             if the governor of a relation has no id, or an id that is
+	 *             not positive.
+	 */
+	public int add(DependencyGraph graph) {
+		List<DGNode> nodes = graph.getNodes();
+		int n = nodes == null ? 0 : nodes.size();
+		ensureSentenceCapacity(sentenceCount + 1);
+		ensureTokenCapacity(tokenCount + n);
+
+		int[] graphHeads = new int[n];
+		String[] graphRelationTypes = new String[n];
+		int root = GraphEncoding.encodeRelations(graph, graphHeads, graphRelationTypes);
+
+		int first = tokenCount;
+		for (int i = 0; i < n; i++) {
+			DGNode node = nodes.get(i);
+			int t = first + i;
+			ids[t] = node.getId();
+			heads[t] = graphHeads[i];
+			starts[t] = node.getStart();
+			ends[t] = node.getEnd();
+			surfaces[t] = labelId(node.getSurface());
+			lemmas[t] = labelId(node.getLemma());
+			posTags[t] = labelId(node.getPos());
+			relationTypes[t] = labelId(graphRelationTypes[i]);
+		}
+
+		int s = sentenceCount;
+		tokenCount += n;
+		tokenOffsets[s + 1] = tokenCount;
+		if (graph.getSentence() != null)
+			text.append(graph.getSentence());
+		textOffsets[s + 1] = text.length();
+		roots[s] = root;
+		parserNames[s] = labelId(graph.getParserName());
+		parserVersions[s] = labelId(graph.getParserVersion());
+		sentenceCount++;
+		return s;
+	}
+
+	/**
+	 * Materializes the graph stored at the given index. The returned graph is
+	 * not backed by this corpus: changes to it are not reflected in the
+	 * corpus.
+	 *
+	 * @param index
+	 *            the index of the graph.
+	 * @return the dependency graph.
+	 */
+	public DependencyGraph getGraph(int index) {
+		checkIndex(index);
+		int first = tokenOffsets[index];
+		int n = tokenOffsets[index + 1] - first;
+
+		DependencyGraph graph = new DependencyGraph();
+		graph.setSentence(getSentence(index));
+		graph.setParserName(label(parserNames[index]));
+		graph.setParserVersion(label(parserVersions[index]));
+
+		List<DGNode> nodes = new ArrayList<DGNode>(n);
+		int[] graphHeads = new int[n];
+		String[] graphRelationTypes = new String[n];
+		for (int i = 0; i < n; i++) {
+			int t = first + i;
+			nodes.add(GraphEncoding.decodeNode(ids[t], starts[t], ends[t], label(surfaces[t]), label(lemmas[t]),
+					label(posTags[t])));
+			graphHeads[i] = heads[t];
+			graphRelationTypes[i] = label(relationTypes[t]);
+		}
+		graph.setNodes(nodes);
+		GraphEncoding.decodeRelations(graph, graphHeads, graphRelationTypes, roots[index]);
+		return graph;
+	}
+
+	/**
+	 * @return the number of graphs in this corpus.
+	 */
+	public int size() {
+		return sentenceCount;
+	}
+
+	/**
+	 * @return the number of tokens in this corpus.
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * @return the number of tokens of the graph at the given index.
+	 */
+	public int getTokenCount(int index) {
+		checkIndex(index);
+		return tokenOffsets[index + 1] - tokenOffsets[index];
+	}
+
+	/**
+	 * @return the sentence of the graph at the given index.
+	 */
+	public String getSentence(int index) {
+		checkIndex(index);
+		return text.substring(textOffsets[index], textOffsets[index + 1]);
+	}
+
+	/**
+	 * @return the head of the i-th token of the graph at the given index, i.e.
+	 *         the id of its governor, {@link #ROOT_HEAD} or {@link #NO_HEAD}.
+	 */
+	public int getHead(int index, int token) {
+		return heads[tokenIndex(index, token)];
+	}
+
+	/**
+	 * @return the label id of the lemma of the i-th token of the graph at the
+	 *         given index.
+	 */
+	public int getLemmaId(int index, int token) {
+		return lemmas[tokenIndex(index, token)];
+	}
+
+	/**
+	 * @return the label id of the part of speech of the i-th token of the graph
+	 *         at the given index.
+	 */
+	public int getPosId(int index, int token) {
+		return posTags[tokenIndex(index, token)];
+	}
+
+	/**
+	 * @return the label id of the type of the relation entering the i-th token
+	 *         of the graph at the given index.
+	 */
+	public int getRelationTypeId(int index, int token) {
+		return relationTypes[tokenIndex(index, token)];
+	}
+
+	/**
+	 * @return the table where the labels of this corpus are interned.
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbolTable;
+	}
+
+	/**
+	 * @return the label associated to an id, or null for {@link #NO_LABEL}.
+	 */
+	public String label(int labelId) {
+		return labelId == NO_LABEL ? null : symbolTable.getSymbol(labelId);
+	}
+
+	/**
+	 * Trims the columns of this corpus to its current size.
+	 */
+	public void trimToSize() {
+		ids = Arrays.copyOf(ids, tokenCount);
+		heads = Arrays.copyOf(heads, tokenCount);
+		starts = Arrays.copyOf(starts, tokenCount);
+		ends = Arrays.copyOf(ends, tokenCount);
+		surfaces = Arrays.copyOf(surfaces, tokenCount);
+		lemmas = Arrays.copyOf(lemmas, tokenCount);
+		posTags = Arrays.copyOf(posTags, tokenCount);
+		relationTypes = Arrays.copyOf(relationTypes, tokenCount);
+		tokenOffsets = Arrays.copyOf(tokenOffsets, sentenceCount + 1);
+		textOffsets = Arrays.copyOf(textOffsets, sentenceCount + 1);
+		roots = Arrays.copyOf(roots, sentenceCount);
+		parserNames = Arrays.copyOf(parserNames, sentenceCount);
+		parserVersions = Arrays.copyOf(parserVersions, sentenceCount);
+		text.trimToSize();
+	}
+
+	@Override
+	public Iterator<DependencyGraph> iterator() {
+		return new Iterator<DependencyGraph>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < sentenceCount;
+			}
+
+			@Override
+			public DependencyGraph next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return getGraph(next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private int labelId(String label) {
+		if (label == null)
+			return NO_LABEL;
+		return symbolTable.add(label);
+	}
+
+	private int tokenIndex(int index, int token) {
+		checkIndex(index);
+		int t = tokenOffsets[index] + token;
+		if (token < 0 || t >= tokenOffsets[index + 1])
+			throw new IndexOutOfBoundsException("Token " + token + " of sentence " + index);
+		return t;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= sentenceCount)
+			throw new IndexOutOfBoundsException("Sentence " + index + ", size " + sentenceCount);
+	}
+
+	private void ensureSentenceCapacity(int capacity) {
+		if (roots.length >= capacity)
+			return;
+		int newCapacity = Math.max(capacity, roots.length * 2);
+		tokenOffsets = Arrays.copyOf(tokenOffsets, newCapacity + 1);
+		textOffsets = Arrays.copyOf(textOffsets, newCapacity + 1);
+		roots = Arrays.copyOf(roots, newCapacity);
+		parserNames = Arrays.copyOf(parserNames, newCapacity);
+		parserVersions = Arrays.copyOf(parserVersions, newCapacity);
+	}
+
+	private void ensureTokenCapacity(int capacity) {
+		if (heads.length >= capacity)
+			return;
+		int newCapacity = Math.max(capacity, heads.length * 2);
+		ids = Arrays.copyOf(ids, newCapacity);
+		heads = Arrays.copyOf(heads, newCapacity);
+		starts = Arrays.copyOf(starts, newCapacity);
+		ends = Arrays.copyOf(ends, newCapacity);
+		surfaces = Arrays.copyOf(surfaces, newCapacity);
+		lemmas = Arrays.copyOf(lemmas, newCapacity);
+		posTags = Arrays.copyOf(posTags, newCapacity);
+		relationTypes = Arrays.copyOf(relationTypes, newCapacity);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.corpus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+/**
+ * The token-level encoding of dependency graphs shared by
+ * {@link ColumnarCorpus} and the parse store. Every token has a head, i.e. the
+ * id of its governor, {@link ColumnarCorpus#ROOT_HEAD} or
+ * {@link ColumnarCorpus#NO_HEAD}, and the type of the relation entering it;
+ * ids and offsets that are not set are stored as -1.
+ */
+final class GraphEncoding {
+
+	private GraphEncoding() {
+	}
+
+	/**
+	 * Encodes the relations of a graph.
+	 *
+	 * @param graph
+	 *            the graph to be encoded.
+	 * @param heads
+	 *            filled with the head of every node, in the order of
+	 *            graph.getNodes().
+	 * @param relationTypes
+	 *            filled with the type of the relation entering every node, or
+	 *            null.
+	 * @return the position of the target of the root relation, or -1.
+	 * @throws IllegalArgumentException
+	 *             if the governor of a relation has no id, or an id that is
+	 *             not positive.
+	 */
+	static int encodeRelations(DependencyGraph graph, int[] heads, String[] relationTypes) {
+		List<DGNode> nodes = graph.getNodes();
+		int n = nodes == null ? 0 : nodes.size();
+		Map<DGNode, Integer> positions = new HashMap<DGNode, Integer>(n * 2);
+		for (int i = 0; i < n; i++) {
+			positions.put(nodes.get(i), i);
+			heads[i] = ColumnarCorpus.NO_HEAD;
+			relationTypes[i] = null;
+		}
+
+		int root = -1;
+		if (graph.getRelations() != null) {
+			for (DGRelation relation : graph.getRelations()) {
+				Integer target = positions.get(relation.getTarget());
+				if (target == null)
+					continue;
+				DGNode source = relation.getSource();
+				// a governor must not be decoded as a root or as a missing head
+				if (source != null && source.getId() <= ColumnarCorpus.ROOT_HEAD)
+					throw new IllegalArgumentException("Governor without a positive id: " + source.getId());
+				heads[target] = source == null ? ColumnarCorpus.ROOT_HEAD : source.getId();
+				relationTypes[target] = relation.getType();
+				if (relation == graph.getRoot())
+					root = target;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * @return a node with the given attributes, where negative ids and
+	 *         offsets are left unset.
+	 */
+	static DGNode decodeNode(int id, int start, int end, String surface, String lemma, String pos) {
+		DGNode node = new DGNode();
+		if (id >= 0)
+			node.setId(id);
+		if (start >= 0)
+			node.setStart(start);
+		if (end >= 0)
+			node.setEnd(end);
+		node.setSurface(surface);
+		node.setLemma(lemma);
+		node.setPos(pos);
+		return node;
+	}
+
+	/**
+	 * Sets the relations of a graph whose nodes have already been set.
+	 *
+	 * @param graph
+	 *            the graph being decoded.
+	 * @param heads
+	 *            the head of every node, in the order of graph.getNodes().
+	 * @param relationTypes
+	 *            the type of the relation entering every node.
+	 * @param root
+	 *            the position of the target of the root relation, or -1.
+	 */
+	static void decodeRelations(DependencyGraph graph, int[] heads, String[] relationTypes, int root) {
+		List<DGNode> nodes = graph.getNodes();
+		int n = nodes.size();
+		List<DGRelation> relations = new ArrayList<DGRelation>(n);
+		for (int i = 0; i < n; i++) {
+			if (heads[i] == ColumnarCorpus.NO_HEAD)
+				continue;
+			DGRelation relation = new DGRelation();
+			relation.setTarget(nodes.get(i));
+			relation.setType(relationTypes[i]);
+			relation.setFromId(heads[i]);
+			if (heads[i] != ColumnarCorpus.ROOT_HEAD)
+				relation.setSource(graph.getDGNodeById(heads[i]));
+			if (i == root)
+				graph.setRoot(relation);
+			relations.add(relation);
+		}
+		graph.setRelations(relations);
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.corpus;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
+
+/**
+ * Reads the dependency graphs of a parse store written by
+ * {@link ParseStoreWriter}. The records of the graphs are memory-mapped, so
+ * opening a store only loads its string table, and every graph is decoded
+ * only when it is requested with {@link #getGraph(int)} or through
+ * {@link #iterator()}.
+ * <p>
+ * The records are mapped in segments of at most 1GB that never split a
+ * record, so stores larger than 2GB can be read as well. The labels are
+ * decoded once per store, and can also be interned in a SymbolTable.
+ * <p>
+ * A reader can be used by many threads at the same time.
+ */
+public class ParseStoreReader implements Iterable<DependencyGraph>, Closeable {
+	private static final long MAX_SEGMENT_SIZE = 1L << 30;
+
+	private final RandomAccessFile file;
+	private final int size;
+	private final String[] strings;
+	private final ByteBuffer offsetIndex;
+	private final int[] segmentFirstGraphs;
+	private final long[] segmentOffsets;
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Opens a parse store, without interning its labels.
+	 *
+	 * @param file
+	 *            the file of the store.
+	 * @throws IOException
+	 */
+	public ParseStoreReader(File file) throws IOException {
+		this(file, null);
+	}
+
+	/**
+	 * Opens a parse store, interning its labels in the given SymbolTable, or
+	 * not interning them if the table is null.
+	 *
+	 * @param file
+	 *            the file of the store.
+	 * @param symbolTable
+	 * @throws IOException
+	 */
+	public ParseStoreReader(File file, SymbolTable symbolTable) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		try {
+			if (this.file.length() < ParseStoreWriter.HEADER_SIZE || this.file.readInt() != ParseStoreWriter.MAGIC)
+				throw new IOException(file + " is not a parse store");
+			int version = this.file.readInt();
+			if (version != ParseStoreWriter.VERSION)
+				throw new IOException("Unsupported parse store version " + version);
+			size = this.file.readInt();
+			int stringCount = this.file.readInt();
+			long stringTableOffset = this.file.readLong();
+			long indexOffset = this.file.readLong();
+			FileChannel channel = this.file.getChannel();
+
+			strings = new String[stringCount];
+			ByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, stringTableOffset,
+					indexOffset - stringTableOffset);
+			for (int i = 0; i < stringCount; i++) {
+				byte[] bytes = new byte[table.getInt()];
+				table.get(bytes);
+				String string = new String(bytes, ParseStoreWriter.UTF8);
+				strings[i] = symbolTable == null ? string : symbolTable.intern(string);
+			}
+
+			offsetIndex = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) size * 8);
+
+			// groups consecutive records in segments, closing a segment before
+			// the first record that would not fit in it
+			List<Integer> firstGraphs = new ArrayList<Integer>();
+			List<Long> offsets = new ArrayList<Long>();
+			for (int i = 0; i < size; i++) {
+				long end = i + 1 < size ? offset(i + 1) : stringTableOffset;
+				if (offsets.isEmpty() || end - offsets.get(offsets.size() - 1) > MAX_SEGMENT_SIZE) {
+					firstGraphs.add(i);
+					offsets.add(offset(i));
+				}
+			}
+			segmentFirstGraphs = new int[firstGraphs.size()];
+			segmentOffsets = new long[offsets.size()];
+			segments = new MappedByteBuffer[offsets.size()];
+			for (int s = 0; s < segments.length; s++) {
+				segmentFirstGraphs[s] = firstGraphs.get(s);
+				segmentOffsets[s] = offsets.get(s);
+				long end = s + 1 < segments.length ? offsets.get(s + 1) : stringTableOffset;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, segmentOffsets[s], end - segmentOffsets[s]);
+			}
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of graphs in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the sentence of the graph at the given index.
+	 */
+	public String getSentence(int index) {
+		ByteBuffer record = record(index);
+		record.position(record.position() + 16);
+		return readString(record);
+	}
+
+	/**
+	 * @return the number of tokens of the graph at the given index.
+	 */
+	public int getTokenCount(int index) {
+		ByteBuffer record = record(index);
+		return record.getInt(record.position());
+	}
+
+	/**
+	 * Decodes the graph stored at the given index.
+	 *
+	 * @param index
+	 *            the index of the graph.
+	 * @return the dependency graph.
+	 */
+	public DependencyGraph getGraph(int index) {
+		ByteBuffer record = record(index);
+		int n = record.getInt();
+		int root = record.getInt();
+
+		DependencyGraph graph = new DependencyGraph();
+		graph.setParserName(label(record.getInt()));
+		graph.setParserVersion(label(record.getInt()));
+		graph.setSentence(readString(record));
+
+		int[] heads = new int[n];
+		String[] relationTypes = new String[n];
+		List<DGNode> nodes = new ArrayList<DGNode>(n);
+		for (int i = 0; i < n; i++) {
+			int id = record.getInt();
+			heads[i] = record.getInt();
+			int start = record.getInt();
+			int end = record.getInt();
+			String surface = label(record.getInt());
+			String lemma = label(record.getInt());
+			String pos = label(record.getInt());
+			relationTypes[i] = label(record.getInt());
+			nodes.add(GraphEncoding.decodeNode(id, start, end, surface, lemma, pos));
+		}
+		graph.setNodes(nodes);
+		GraphEncoding.decodeRelations(graph, heads, relationTypes, root);
+		return graph;
+	}
+
+	/**
+	 * Iterates over the graphs of the store in order, decoding them one at a
+	 * time.
+	 */
+	@Override
+	public Iterator<DependencyGraph> iterator() {
+		return new Iterator<DependencyGraph>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public DependencyGraph next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return getGraph(next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Closes the file of the store. The mapped records are released when the
+	 * reader is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private long offset(int index) {
+		return offsetIndex.getLong(index * 8);
+	}
+
+	/**
+	 * @return a buffer positioned at the beginning of the record of the graph
+	 *         at the given index; the buffer is private to the caller.
+	 */
+	private ByteBuffer record(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Graph " + index + ", size " + size);
+		int s = segmentOf(index);
+		ByteBuffer record = segments[s].duplicate();
+		record.position((int) (offset(index) - segmentOffsets[s]));
+		return record;
+	}
+
+	private int segmentOf(int index) {
+		int low = 0;
+		int high = segmentFirstGraphs.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (segmentFirstGraphs[mid] <= index)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	private String label(int id) {
+		return id == ColumnarCorpus.NO_LABEL ? null : strings[id];
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, ParseStoreWriter.UTF8);
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.corpus;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+/**
+ * Writes a sequence of dependency graphs in the binary parse store format,
+ * which can be read back with {@link ParseStoreReader}. Parsing a corpus once
+ * and storing it allows to try many tree representations without parsing the
+ * corpus again.
+ * <p>
+ * A parse store contains, in order:
+ * <ul>
+ * <li>a header: magic number, format version, number of graphs, number of
+ * strings, offset of the string table and offset of the index;</li>
+ * <li>one record per graph: number of tokens, index of the root token, ids of
+ * the parser name and version, the UTF-8 sentence, and eight ints per token
+ * (id, head, start, end and the ids of surface, lemma, part of speech and
+ * relation type), with the same conventions as {@link ColumnarCorpus};</li>
+ * <li>the string table, where every label is stored once;</li>
+ * <li>the index, i.e. the offset of the record of every graph.</li>
+ * </ul>
+ * All the numbers are big endian. As in ColumnarCorpus, only the standard
+ * properties of nodes and relations are stored.
+ */
+public class ParseStoreWriter implements Closeable {
+	static final int MAGIC = 0x4B444753;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final int INTS_PER_TOKEN = 8;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final DataOutputStream out;
+	private long position;
+	private final Map<String, Integer> stringIds;
+	private final List<String> strings;
+	private long[] offsets;
+	private int count;
+	private boolean closed;
+
+	/**
+	 * Creates a parse store, overwriting the given file.
+	 *
+	 * @param file
+	 *            the file to be written.
+	 * @throws IOException
+	 */
+	public ParseStoreWriter(File file) throws IOException {
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		this.stringIds = new HashMap<String, Integer>();
+		this.strings = new ArrayList<String>();
+		this.offsets = new long[1024];
+		// the header is completed by close()
+		out.write(new byte[HEADER_SIZE]);
+		position = HEADER_SIZE;
+	}
+
+	/**
+	 * Appends a graph to the store.
+	 *
+	 * @param graph
+	 *            the graph to be written.
+	 * @return the index of the graph in the store.
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if the governor of a relation has no id, or an id that is
+	 *             not positive.
+	 */
+	public int write(DependencyGraph graph) throws IOException {
+		if (closed)
+			throw new IllegalStateException("The parse store has been closed");
+		List<DGNode> nodes = graph.getNodes();
+		int n = nodes == null ? 0 : nodes.size();
+		int[] heads = new int[n];
+		String[] relationTypes = new String[n];
+		int root = GraphEncoding.encodeRelations(graph, heads, relationTypes);
+
+		if (count == offsets.length)
+			offsets = Arrays.copyOf(offsets, count * 2);
+		offsets[count] = position;
+
+		byte[] sentence = graph.getSentence() == null ? new byte[0] : graph.getSentence().getBytes(UTF8);
+		writeInt(n);
+		writeInt(root);
+		writeInt(stringId(graph.getParserName()));
+		writeInt(stringId(graph.getParserVersion()));
+		writeBytes(sentence);
+		for (int i = 0; i < n; i++) {
+			DGNode node = nodes.get(i);
+			writeInt(node.getId());
+			writeInt(heads[i]);
+			writeInt(node.getStart());
+			writeInt(node.getEnd());
+			writeInt(stringId(node.getSurface()));
+			writeInt(stringId(node.getLemma()));
+			writeInt(stringId(node.getPos()));
+			writeInt(stringId(relationTypes[i]));
+		}
+		return count++;
+	}
+
+	/**
+	 * Appends all the given graphs to the store.
+	 *
+	 * @param graphs
+	 *            the graphs to be written.
+	 * @throws IOException
+	 */
+	public void writeAll(Iterable<DependencyGraph> graphs) throws IOException {
+		for (DependencyGraph graph : graphs)
+			write(graph);
+	}
+
+	/**
+	 * @return the number of graphs written so far.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Writes the string table and the index, and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		long stringTableOffset = position;
+		for (String string : strings)
+			writeBytes(string.getBytes(UTF8));
+		long indexOffset = position;
+		for (int i = 0; i < count; i++)
+			out.writeLong(offsets[i]);
+		out.close();
+
+		RandomAccessFile header = new RandomAccessFile(file, "rw");
+		try {
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(count);
+			header.writeInt(strings.size());
+			header.writeLong(stringTableOffset);
+			header.writeLong(indexOffset);
+		} finally {
+			header.close();
+		}
+	}
+
+	private int stringId(String string) {
+		if (string == null)
+			return ColumnarCorpus.NO_LABEL;
+		Integer id = stringIds.get(string);
+		if (id == null) {
+			id = strings.size();
+			strings.add(string);
+			stringIds.put(string, id);
+		}
+		return id;
+	}
+
+	private void writeInt(int value) throws IOException {
+		out.writeInt(value);
+		position += 4;
+	}
+
+	private void writeBytes(byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		position += 4 + bytes.length;
+	}
+}
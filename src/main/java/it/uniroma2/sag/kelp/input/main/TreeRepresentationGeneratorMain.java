@@ -81,18 +81,18 @@ public class TreeRepresentationGeneratorMain {
 		System.out.println("      Dependency graph");
 		System.out.println("================================");
 		for (DGNode node : nodes) {
-			int id = new Integer(node.getProperties().get("id").toString());
-			String surface = node.getProperties().get("surface").toString();
-			String lemma = node.getProperties().get("lemma").toString();
-			String pos = node.getProperties().get("pos").toString();
+			int id = node.getId();
+			String surface = node.getSurface();
+			String lemma = node.getLemma();
+			String pos = node.getPos();
 
 			String srcId = "0";
 			String relType = "root";
 			DGRelation relation = relations.get(id - 1);
 			DGNode source = relation.getSource();
 			if (source != null) {
-				relType = relation.getProperties().get("type").toString();
-				srcId = source.getProperties().get("id").toString();
+				relType = relation.getType();
+				srcId = String.valueOf(source.getId());
 			}
 			System.out.println(id + "\t" + surface + "\t" + lemma + "\t" + pos + "\t" + srcId + "\t" + relType);
 		}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+/**
+ * Base class for a Dependency Parser, parsing batches of sentences one at a
+ * time with {@link #parse(String)}.
+ */
+public abstract class AbstractDependencyParser implements DependencyParser {
+
+	// redeclared to make the public finalize of DependencyParser override the
+	// protected one of Object
+	@Override
+	public abstract void finalize() throws Throwable;
+
+	/**
+	 * Returns the settings that determine the graphs of the sentences, so
+	 * that a change of configuration can be detected by comparing them with
+	 * equals, e.g. to invalidate the cached graphs.
+	 * 
+	 * @return the current settings, or null if the graphs depend on the
+	 *         sentences only.
+	 */
+	public Object getConfiguration() {
+		return null;
+	}
+
+	@Override
+	public List<DependencyGraph> parseAll(List<String> sentences) {
+		List<DependencyGraph> graphs = new ArrayList<DependencyGraph>(sentences.size());
+		for (String sentence : sentences)
+			graphs.add(parse(sentence));
+		return graphs;
+	}
+}
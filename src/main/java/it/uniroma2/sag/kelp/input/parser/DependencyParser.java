@@ -15,6 +15,8 @@
 
 package it.uniroma2.sag.kelp.input.parser;
 
+import java.util.List;
+
 import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
 
 /**
@@ -40,4 +42,14 @@ public interface DependencyParser {
 	 * dependencies associated to the sentence.
 	 */
 	public DependencyGraph parse(String sentence);
+
+	/**
+	 * Method to parse a batch of sentences. Implementations may parse the
+	 * sentences in parallel, but the graphs are returned in the same order as
+	 * the sentences.
+	 * 
+	 * @param sentences The sentences to be parsed.
+	 * @return the list of DependencyGraph objects associated to the sentences.
+	 */
+	public List<DependencyGraph> parseAll(List<String> sentences);
 }
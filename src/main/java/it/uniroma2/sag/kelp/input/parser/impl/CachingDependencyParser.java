@@ -0,0 +1,264 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.parser.impl;
+
+import it.uniroma2.sag.kelp.input.parser.AbstractDependencyParser;
+import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DependencyParser that caches the graphs produced by another parser, so
+ * that repeated sentences are parsed only once.
+ * <p>
+ * The cache is bounded both in the number of graphs and in their total weight,
+ * i.e. the total number of nodes, and evicts the least recently used graphs
+ * first. The cached graphs are frozen (see {@link DependencyGraph#freeze()}),
+ * so the same instance can be safely returned to many callers and threads.
+ * <p>
+ * The graphs are keyed by the sentence, and the cache is cleared whenever the
+ * configuration of the wrapped parser changes (see
+ * {@link AbstractDependencyParser#getConfiguration()}): a cache must therefore
+ * wrap a single parser.
+ */
+public class CachingDependencyParser extends AbstractDependencyParser {
+
+	private final DependencyParser parser;
+	private final int maxEntries;
+	private final long maxWeight;
+	private final LinkedHashMap<String, DependencyGraph> cache;
+	private long weight;
+	// the configuration of the parser that produced the cached graphs
+	private Object configuration;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param parser
+	 *            the parser whose graphs are cached.
+	 * @param maxEntries
+	 *            the maximum number of cached graphs.
+	 */
+	public CachingDependencyParser(DependencyParser parser, int maxEntries) {
+		this(parser, maxEntries, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param parser
+	 *            the parser whose graphs are cached.
+	 * @param maxEntries
+	 *            the maximum number of cached graphs.
+	 * @param maxWeight
+	 *            the maximum total number of nodes of the cached graphs.
+	 */
+	public CachingDependencyParser(DependencyParser parser, int maxEntries, long maxWeight) {
+		if (maxEntries < 1 || maxWeight < 1)
+			throw new IllegalArgumentException("The bounds of the cache must be positive");
+		this.parser = parser;
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.cache = new LinkedHashMap<String, DependencyGraph>(16, 0.75f, true);
+	}
+
+	/**
+	 * @return the parser whose graphs are cached.
+	 */
+	public DependencyParser getParser() {
+		return parser;
+	}
+
+	@Override
+	public Object getConfiguration() {
+		return parser instanceof AbstractDependencyParser ? ((AbstractDependencyParser) parser).getConfiguration()
+				: null;
+	}
+
+	@Override
+	public void initialize() {
+		parser.initialize();
+	}
+
+	@Override
+	public void finalize() throws Throwable {
+		clear();
+		parser.finalize();
+	}
+
+	/**
+	 * Returns the graph of the sentence, parsing it only if it is not cached.
+	 * The returned graph is frozen.
+	 */
+	@Override
+	public DependencyGraph parse(String sentence) {
+		Object configuration = validate();
+		DependencyGraph graph = lookup(sentence);
+		if (graph != null)
+			return graph;
+		return store(sentence, parser.parse(sentence), configuration);
+	}
+
+	/**
+	 * Returns the graphs of the sentences. The sentences that are not cached
+	 * are parsed in a single batch by the wrapped parser.
+	 */
+	@Override
+	public List<DependencyGraph> parseAll(List<String> sentences) {
+		Object configuration = validate();
+		List<DependencyGraph> graphs = new ArrayList<DependencyGraph>(sentences.size());
+		List<String> missing = new ArrayList<String>();
+		List<Integer> missingPositions = new ArrayList<Integer>();
+		for (int i = 0; i < sentences.size(); i++) {
+			DependencyGraph graph = lookup(sentences.get(i));
+			graphs.add(graph);
+			if (graph == null) {
+				missing.add(sentences.get(i));
+				missingPositions.add(i);
+			}
+		}
+		if (missing.isEmpty())
+			return graphs;
+		List<DependencyGraph> parsed = parser.parseAll(missing);
+		for (int i = 0; i < parsed.size(); i++)
+			graphs.set(missingPositions.get(i), store(missing.get(i), parsed.get(i), configuration));
+		return graphs;
+	}
+
+	/**
+	 * Clears the cache if the configuration of the parser has changed since
+	 * the cached graphs were produced.
+	 * 
+	 * @return the current configuration of the parser.
+	 */
+	private Object validate() {
+		Object current = getConfiguration();
+		synchronized (cache) {
+			if (current == null ? configuration != null : !current.equals(configuration)) {
+				cache.clear();
+				weight = 0;
+				configuration = current;
+			}
+		}
+		return current;
+	}
+
+	private DependencyGraph lookup(String sentence) {
+		DependencyGraph graph;
+		synchronized (cache) {
+			graph = cache.get(sentence);
+		}
+		if (graph != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return graph;
+	}
+
+	private DependencyGraph store(String sentence, DependencyGraph graph, Object parsedWith) {
+		if (graph == null)
+			return null;
+		graph.freeze();
+		int graphWeight = weightOf(graph);
+		if (graphWeight > maxWeight)
+			return graph;
+		synchronized (cache) {
+			// the configuration may have changed while the sentence was parsed
+			if (parsedWith == null ? configuration != null : !parsedWith.equals(configuration))
+				return graph;
+			// another thread may have parsed the same sentence in the meantime
+			DependencyGraph cached = cache.get(sentence);
+			if (cached != null)
+				return cached;
+			cache.put(sentence, graph);
+			weight += graphWeight;
+			Iterator<DependencyGraph> eldest = cache.values().iterator();
+			while (cache.size() > maxEntries || weight > maxWeight) {
+				weight -= weightOf(eldest.next());
+				eldest.remove();
+				evictions.incrementAndGet();
+			}
+		}
+		return graph;
+	}
+
+	private static int weightOf(DependencyGraph graph) {
+		return graph.getNodes() == null ? 1 : Math.max(1, graph.getNodes().size());
+	}
+
+	/**
+	 * Removes all the cached graphs. The statistics are not reset.
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+			weight = 0;
+		}
+	}
+
+	/**
+	 * @return the number of cached graphs.
+	 */
+	public int size() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+
+	/**
+	 * @return the total number of nodes of the cached graphs.
+	 */
+	public long getWeight() {
+		synchronized (cache) {
+			return weight;
+		}
+	}
+
+	/**
+	 * @return the number of sentences whose graph was found in the cache.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of sentences whose graph was not found in the cache.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of graphs evicted from the cache.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the ratio between hits and lookups, or 0 if no lookup has been
+	 *         performed.
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.parser.impl;
+
+import it.uniroma2.sag.kelp.input.parser.AbstractDependencyParser;
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads dependency graphs in the CoNLL-U format, e.g. produced by other
+ * parsers or taken from a treebank, with the same conventions as the graphs
+ * produced by {@link StanfordParserWrapper}: node ids start from 1, the lemma
+ * is the LEMMA column (the FORM column when LEMMA is missing), the part of
+ * speech is the XPOS column (the UPOS column when XPOS is missing), and the
+ * relation of the token whose head is 0 has type "root".
+ * <p>
+ * The start and end offsets of the tokens are taken from the TokenRange
+ * attribute of the MISC column, when available. Otherwise the tokens are
+ * aligned to the "# text" comment of the sentence or, when it is missing, to
+ * the sentence rebuilt from the tokens and their SpaceAfter=No attributes.
+ * Multiword tokens and empty nodes are skipped. The name and version of the
+ * parser are read from the comments written by {@link ConllUWriter}.
+ * <p>
+ * A reader built on a stream reads it one sentence at a time through
+ * {@link #readGraph()} or {@link #iterator()}, so that arbitrarily large files
+ * are read in constant memory. {@link #parse(String)} converts a single
+ * sentence block given as a string.
+ */
+public class ConllUReader extends AbstractDependencyParser implements Iterable<DependencyGraph>, Closeable {
+	public static final String PARSER_NAME = "CoNLL-U";
+
+	static final String TEXT_COMMENT = "# text = ";
+	static final String TOKEN_RANGE = "TokenRange=";
+	static final String NO_SPACE_AFTER = "SpaceAfter=No";
+
+	private final BufferedReader reader;
+	private SymbolTable symbolTable;
+	private int lineNumber;
+
+	/**
+	 * Creates a reader that only converts the sentence blocks given to
+	 * {@link #parse(String)}.
+	 */
+	public ConllUReader() {
+		this.reader = null;
+	}
+
+	/**
+	 * Creates a reader of the sentences in the given stream.
+	 *
+	 * @param reader
+	 */
+	public ConllUReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+	}
+
+	/**
+	 * Creates a reader of the sentences in the given UTF-8 file.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public ConllUReader(File file) throws IOException {
+		this(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+	}
+
+	/**
+	 * @return the table where lemmas, parts of speech and relation types are
+	 *         interned, or null if they are not interned.
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbolTable;
+	}
+
+	/**
+	 * Set the table where lemmas, parts of speech and relation types are
+	 * interned, or null (the default) not to intern them. The table grows with
+	 * every new label, so it should be owned by the caller and discarded with
+	 * the graphs.
+	 *
+	 * @param symbolTable
+	 */
+	public void setSymbolTable(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+	}
+
+	@Override
+	public void initialize() {
+	}
+
+	@Override
+	public void finalize() throws Throwable {
+		close();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null)
+			reader.close();
+	}
+
+	/**
+	 * Converts a sentence block in the CoNLL-U format into a DependencyGraph.
+	 *
+	 * @param sentence
+	 *            the lines of a single sentence in the CoNLL-U format.
+	 * @return the dependency graph of the sentence.
+	 */
+	@Override
+	public DependencyGraph parse(String sentence) {
+		ConllUReader block = new ConllUReader(new StringReader(sentence));
+		block.setSymbolTable(symbolTable);
+		try {
+			DependencyGraph graph = block.readGraph();
+			if (graph == null)
+				throw new IllegalArgumentException("No sentence in the CoNLL-U block");
+			return graph;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the next sentence of the stream of this reader.
+	 *
+	 * @return the dependency graph of the next sentence, or null at the end of
+	 *         the stream.
+	 * @throws IOException
+	 */
+	public synchronized DependencyGraph readGraph() throws IOException {
+		if (reader == null)
+			throw new IllegalStateException("This reader is not associated to a stream");
+		return readGraph(reader);
+	}
+
+	/**
+	 * Iterates over the remaining sentences of the stream of this reader. An
+	 * IOException thrown while reading is rethrown wrapped in an
+	 * IllegalStateException.
+	 */
+	@Override
+	public Iterator<DependencyGraph> iterator() {
+		return new Iterator<DependencyGraph>() {
+			private DependencyGraph next;
+
+			@Override
+			public boolean hasNext() {
+				if (next == null) {
+					try {
+						next = readGraph();
+					} catch (IOException e) {
+						throw new IllegalStateException("Error while reading line " + lineNumber, e);
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public DependencyGraph next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				DependencyGraph graph = next;
+				next = null;
+				return graph;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private DependencyGraph readGraph(BufferedReader in) throws IOException {
+		String text = null;
+		String parserName = PARSER_NAME;
+		String parserVersion = null;
+		List<String[]> tokens = new ArrayList<String[]>();
+		String line;
+		while ((line = in.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().length() == 0) {
+				if (!tokens.isEmpty())
+					break;
+				// a sentence made only of comments is ignored
+				text = null;
+				parserName = PARSER_NAME;
+				parserVersion = null;
+				continue;
+			}
+			if (line.charAt(0) == '#') {
+				if (line.startsWith(TEXT_COMMENT))
+					text = line.substring(TEXT_COMMENT.length());
+				else if (line.startsWith(ConllUWriter.PARSER_COMMENT))
+					parserName = line.substring(ConllUWriter.PARSER_COMMENT.length());
+				else if (line.startsWith(ConllUWriter.PARSER_VERSION_COMMENT))
+					parserVersion = line.substring(ConllUWriter.PARSER_VERSION_COMMENT.length());
+				continue;
+			}
+			String[] fields = line.split("\t");
+			if (fields.length < 8)
+				throw new IllegalArgumentException("Malformed CoNLL-U line " + lineNumber + ": " + line);
+			// multiword tokens (1-2) and empty nodes (1.1)
+			if (fields[0].indexOf('-') >= 0 || fields[0].indexOf('.') >= 0)
+				continue;
+			tokens.add(fields);
+		}
+		if (tokens.isEmpty())
+			return null;
+		DependencyGraph graph = toDependencyGraph(tokens, text);
+		graph.setParserName(parserName);
+		graph.setParserVersion(parserVersion);
+		return graph;
+	}
+
+	private DependencyGraph toDependencyGraph(List<String[]> tokens, String text) {
+		DependencyGraph graph = new DependencyGraph();
+		List<DGNode> nodes = new ArrayList<DGNode>(tokens.size());
+		StringBuilder rebuilt = text == null ? new StringBuilder() : null;
+		int cursor = 0;
+		for (String[] fields : tokens) {
+			DGNode node = new DGNode();
+			String form = fields[1];
+			node.setId(parseInt(fields[0]));
+			node.setSurface(form);
+			// the label generators expect a lemma for every token
+			String lemma = value(fields[2]);
+			node.setLemma(intern(lemma != null ? lemma : form));
+			String pos = value(fields[4]);
+			node.setPos(intern(pos != null ? pos : value(fields[3])));
+
+			String misc = fields.length > 9 ? fields[9] : "_";
+			int start = -1;
+			int end = -1;
+			int range = misc.indexOf(TOKEN_RANGE);
+			if (range >= 0) {
+				int colon = misc.indexOf(':', range);
+				int bar = misc.indexOf('|', range);
+				start = parseInt(misc.substring(range + TOKEN_RANGE.length(), colon));
+				end = parseInt(misc.substring(colon + 1, bar < 0 ? misc.length() : bar));
+			} else if (text != null) {
+				int found = text.indexOf(form, cursor);
+				start = found >= 0 ? found : cursor;
+				end = start + form.length();
+				cursor = end;
+			} else {
+				start = rebuilt.length();
+				end = start + form.length();
+			}
+			if (rebuilt != null) {
+				rebuilt.append(form);
+				if (misc.indexOf(NO_SPACE_AFTER) < 0)
+					rebuilt.append(' ');
+			}
+			node.setStart(start);
+			node.setEnd(end);
+			nodes.add(node);
+		}
+		graph.setSentence(text != null ? text : rebuilt.toString().trim());
+		graph.setNodes(nodes);
+
+		List<DGRelation> relations = new ArrayList<DGRelation>(tokens.size());
+		for (int i = 0; i < tokens.size(); i++) {
+			String[] fields = tokens.get(i);
+			String head = value(fields[6]);
+			if (head == null)
+				continue;
+			DGRelation relation = new DGRelation();
+			relation.setTarget(nodes.get(i));
+			int headId = parseInt(head);
+			if (headId == 0) {
+				relation.setType("root");
+				relation.setFromId(0);
+				relation.setSource(null);
+				graph.setRoot(relation);
+			} else {
+				DGNode parent = graph.getDGNodeById(headId);
+				if (parent == null)
+					throw new IllegalArgumentException("Unknown head " + headId + " of token " + fields[0]
+							+ " before line " + lineNumber);
+				relation.setSource(parent);
+				relation.setFromId(headId);
+				relation.setType(intern(value(fields[7])));
+			}
+			relations.add(relation);
+		}
+		graph.setRelations(relations);
+		return graph;
+	}
+
+	private String intern(String label) {
+		return symbolTable == null || label == null ? label : symbolTable.intern(label);
+	}
+
+	private static String value(String field) {
+		return field.equals("_") ? null : field;
+	}
+
+	private int parseInt(String field) {
+		try {
+			return Integer.parseInt(field);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed number " + field + " before line " + lineNumber);
+		}
+	}
+}
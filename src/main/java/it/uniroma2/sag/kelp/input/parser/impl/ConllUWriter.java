@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.parser.impl;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes dependency graphs in the CoNLL-U format, one sentence block per
+ * graph, so that the output of an expensive parser can be stored and later
+ * read back with {@link ConllUReader}, without the parser models.
+ * <p>
+ * Every block starts with the "# text" comment and with the name and version
+ * of the parser. The part of speech is written in the XPOS column, and the
+ * start and end offsets of every token are written in the MISC column as
+ * TokenRange=start:end, together with SpaceAfter=No when the following token
+ * starts where the token ends.
+ */
+public class ConllUWriter implements Closeable, Flushable {
+	static final String PARSER_COMMENT = "# parser = ";
+	static final String PARSER_VERSION_COMMENT = "# parser_version = ";
+
+	private final Writer out;
+
+	/**
+	 * Creates a writer on the given stream, which is buffered if needed.
+	 *
+	 * @param out
+	 */
+	public ConllUWriter(Writer out) {
+		this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+	}
+
+	/**
+	 * Creates a writer on the given file, encoded in UTF-8.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public ConllUWriter(File file) throws IOException {
+		this(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+	}
+
+	/**
+	 * Writes the block of a graph.
+	 *
+	 * @param graph
+	 *            the graph to be written.
+	 * @throws IOException
+	 */
+	public synchronized void write(DependencyGraph graph) throws IOException {
+		if (graph.getSentence() != null)
+			writeComment(ConllUReader.TEXT_COMMENT, graph.getSentence());
+		if (graph.getParserName() != null)
+			writeComment(PARSER_COMMENT, graph.getParserName());
+		if (graph.getParserVersion() != null)
+			writeComment(PARSER_VERSION_COMMENT, graph.getParserVersion());
+
+		List<DGNode> nodes = graph.getNodes();
+		int n = nodes == null ? 0 : nodes.size();
+		Map<DGNode, DGRelation> incoming = new HashMap<DGNode, DGRelation>(n * 2);
+		if (graph.getRelations() != null) {
+			for (DGRelation relation : graph.getRelations()) {
+				if (!incoming.containsKey(relation.getTarget()))
+					incoming.put(relation.getTarget(), relation);
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			DGNode node = nodes.get(i);
+			DGRelation relation = incoming.get(node);
+			out.write(Integer.toString(node.getId() >= 0 ? node.getId() : i + 1));
+			writeField(node.getSurface());
+			writeField(node.getLemma());
+			writeField(null);
+			writeField(node.getPos());
+			writeField(null);
+			if (relation == null) {
+				writeField(null);
+				writeField(null);
+			} else if (relation.getSource() == null) {
+				writeField("0");
+				writeField("root");
+			} else {
+				writeField(Integer.toString(relation.getSource().getId()));
+				writeField(relation.getType());
+			}
+			writeField(null);
+
+			out.write('\t');
+			boolean misc = false;
+			if (node.getStart() >= 0 && node.getEnd() >= 0) {
+				out.write(ConllUReader.TOKEN_RANGE);
+				out.write(Integer.toString(node.getStart()));
+				out.write(':');
+				out.write(Integer.toString(node.getEnd()));
+				misc = true;
+			}
+			if (i + 1 < n && node.getEnd() >= 0 && nodes.get(i + 1).getStart() == node.getEnd()) {
+				if (misc)
+					out.write('|');
+				out.write(ConllUReader.NO_SPACE_AFTER);
+				misc = true;
+			}
+			if (!misc)
+				out.write('_');
+			out.write('\n');
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * Writes the blocks of all the given graphs.
+	 *
+	 * @param graphs
+	 *            the graphs to be written.
+	 * @throws IOException
+	 */
+	public void writeAll(Iterable<DependencyGraph> graphs) throws IOException {
+		for (DependencyGraph graph : graphs)
+			write(graph);
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+	private void writeComment(String prefix, String value) throws IOException {
+		out.write(prefix);
+		out.write(clean(value, false));
+		out.write('\n');
+	}
+
+	private void writeField(String value) throws IOException {
+		out.write('\t');
+		out.write(value == null || value.length() == 0 ? "_" : clean(value, true));
+	}
+
+	/**
+	 * Replaces the characters that would break the line structure of the
+	 * format (and tabs, in a field) with spaces.
+	 */
+	private static String clean(String value, boolean field) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\n' || c == '\r' || (field && c == '\t'))
+				return value.replace('\n', ' ').replace('\r', ' ').replace('\t', field ? ' ' : '\t');
+		}
+		return value;
+	}
+}
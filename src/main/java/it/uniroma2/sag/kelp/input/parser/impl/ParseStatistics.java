@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.parser.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counters of the events occurred while parsing with a
+ * {@link StanfordParserWrapper}: the parsed sentences, and the sentences that
+ * exceeded the per-sentence budget, together with the fallback applied to
+ * them. The time spent by CoreNLP annotating the sentences is measured apart
+ * from the time spent converting the annotations into dependency graphs.
+ */
+public class ParseStatistics {
+	private final AtomicLong sentences = new AtomicLong();
+	private final AtomicLong tooLong = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong truncated = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+	private final AtomicLong annotationTime = new AtomicLong();
+	private final AtomicLong conversions = new AtomicLong();
+	private final AtomicLong conversionTime = new AtomicLong();
+
+	void sentence() {
+		sentences.incrementAndGet();
+	}
+
+	void tooLong() {
+		tooLong.incrementAndGet();
+	}
+
+	void timedOut() {
+		timedOut.incrementAndGet();
+	}
+
+	void skipped() {
+		skipped.incrementAndGet();
+	}
+
+	void truncated() {
+		truncated.incrementAndGet();
+	}
+
+	void fallback() {
+		fallbacks.incrementAndGet();
+	}
+
+	void annotated(long nanos) {
+		annotationTime.addAndGet(nanos);
+	}
+
+	void converted(long nanos) {
+		conversions.incrementAndGet();
+		conversionTime.addAndGet(nanos);
+	}
+
+	/**
+	 * @return the number of sentences given to the parser.
+	 */
+	public long getSentenceCount() {
+		return sentences.get();
+	}
+
+	/**
+	 * @return the number of sentences longer than the maximum number of
+	 *         tokens.
+	 */
+	public long getTooLongCount() {
+		return tooLong.get();
+	}
+
+	/**
+	 * @return the number of sentences whose parsing exceeded the timeout.
+	 */
+	public long getTimeoutCount() {
+		return timedOut.get();
+	}
+
+	/**
+	 * @return the number of sentences for which no graph was returned.
+	 */
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+	/**
+	 * @return the number of sentences parsed after being truncated.
+	 */
+	public long getTruncatedCount() {
+		return truncated.get();
+	}
+
+	/**
+	 * @return the number of sentences parsed with the fallback backend.
+	 */
+	public long getFallbackCount() {
+		return fallbacks.get();
+	}
+
+	/**
+	 * @return the time spent by CoreNLP annotating the sentences, in
+	 *         nanoseconds.
+	 */
+	public long getAnnotationTime() {
+		return annotationTime.get();
+	}
+
+	/**
+	 * @return the number of dependency graphs converted from the CoreNLP
+	 *         annotations.
+	 */
+	public long getConversionCount() {
+		return conversions.get();
+	}
+
+	/**
+	 * @return the time spent converting the CoreNLP annotations into
+	 *         dependency graphs, in nanoseconds.
+	 */
+	public long getConversionTime() {
+		return conversionTime.get();
+	}
+
+	/**
+	 * Sets all the counters to zero.
+	 */
+	public void reset() {
+		sentences.set(0);
+		tooLong.set(0);
+		timedOut.set(0);
+		skipped.set(0);
+		truncated.set(0);
+		fallbacks.set(0);
+		annotationTime.set(0);
+		conversions.set(0);
+		conversionTime.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "sentences=" + sentences + ", tooLong=" + tooLong + ", timedOut=" + timedOut + ", skipped=" + skipped
+				+ ", truncated=" + truncated + ", fallbacks=" + fallbacks + ", annotationTime="
+				+ TimeUnit.NANOSECONDS.toMillis(annotationTime.get()) + "ms, conversions=" + conversions
+				+ ", conversionTime=" + TimeUnit.NANOSECONDS.toMillis(conversionTime.get()) + "ms";
+	}
+}
@@ -14,21 +14,42 @@
  */
 package it.uniroma2.sag.kelp.input.parser.impl;
 
-import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.AbstractDependencyParser;
+import it.uniroma2.sag.kelp.input.parser.model.ConstituencyNode;
 import it.uniroma2.sag.kelp.input.parser.model.DGNode;
 import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
 import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.stanford.nlp.ie.machinereading.RelationFeatureFactory.DEPENDENCY_TYPE;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.SentenceIndexAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokenBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokenEndAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.IndexedWord;
@@ -39,39 +60,904 @@ import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesA
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation;
 import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
+import edu.stanford.nlp.util.ArrayCoreMap;
 import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
 
-public class StanfordParserWrapper implements DependencyParser {
-	protected StanfordCoreNLP pipeline;
+/**
+ * DependencyParser based on the Stanford CoreNLP pipeline.
+ * <p>
+ * After {@link #initialize()}, {@link #parse(String)} can be invoked
+ * concurrently by many threads, since they all share the same CoreNLP
+ * pipeline. {@link #parseAll(List)} parses a batch of sentences on a pool of
+ * worker threads owned by this wrapper, whose size can be set with
+ * {@link #setNumThreads(int)}. {@link #parseDocument(String)} splits a whole
+ * document into sentences and parses all of them in a single CoreNLP pass.
+ * <p>
+ * The dependencies can be produced by two backends (see {@link Backend}): the
+ * PCFG constituency parser, whose trees are converted into dependencies, or
+ * the much faster neural network dependency parser. With the PCFG backend, the
+ * constituency tree produced by the same parse can be kept in the graphs (see
+ * {@link #setKeepConstituencyTree(boolean)}).
+ * <p>
+ * The CoreNLP pipelines are obtained from the {@link StanfordPipelineRegistry},
+ * so that wrappers with identical settings share the loaded models. The
+ * pipelines are released by {@link #finalize()}.
+ * <p>
+ * The time spent on a single sentence by {@link #parse(String)} and
+ * {@link #parseAll(List)} can be bounded with {@link #setMaxTokens(int)} and
+ * {@link #setTimeout(long)}: the sentences exceeding the budget are handled
+ * according to {@link #setFallback(Fallback)}, and the events are counted in
+ * the {@link ParseStatistics} returned by {@link #getStatistics()}, which also
+ * reports the annotation and conversion times.
+ * <p>
+ * Sentences already tokenized, and possibly tagged and lemmatized, can be
+ * parsed with {@link #parseTokens(List, List, List)}, which runs only the
+ * annotators still needed.
+ */
+public class StanfordParserWrapper extends AbstractDependencyParser {
+	/**
+	 * The CoreNLP annotator producing the dependency graphs.
+	 */
+	public enum Backend {
+		/**
+		 * The PCFG constituency parser (annotator "parse"): the dependencies
+		 * are derived from the constituency tree.
+		 */
+		PCFG("parse"),
+		/**
+		 * The neural network dependency parser (annotator "depparse"): the
+		 * dependencies are produced directly, typically an order of magnitude
+		 * faster than with the PCFG parser.
+		 */
+		NEURAL("depparse");
+
+		private final String annotator;
+
+		private Backend(String annotator) {
+			this.annotator = annotator;
+		}
+
+		/**
+		 * @return the name of the CoreNLP annotator of this backend.
+		 */
+		public String getAnnotator() {
+			return annotator;
+		}
+	}
+
+	/**
+	 * What to do with a sentence exceeding the maximum number of tokens or
+	 * the timeout.
+	 */
+	public enum Fallback {
+		/**
+		 * No graph is returned for the sentence, i.e. the parse methods return
+		 * null.
+		 */
+		SKIP,
+		/**
+		 * Only the first tokens of the sentence are parsed: as many as the
+		 * maximum number of tokens, or half of them if the parser timed out on
+		 * a sentence within the limit. The sentence is skipped if the parser
+		 * times out again.
+		 */
+		TRUNCATE,
+		/**
+		 * The sentence is parsed with the fallback backend, without timeout.
+		 */
+		BACKEND
+	}
+
+	/**
+	 * A pipeline acquired from the registry the first time it is needed.
+	 */
+	private abstract class LazyPipeline {
+		private volatile StanfordCoreNLP pipeline;
+		private Properties properties;
+
+		protected abstract Properties properties();
+
+		StanfordCoreNLP get() {
+			StanfordCoreNLP pipeline = this.pipeline;
+			if (pipeline == null) {
+				synchronized (this) {
+					pipeline = this.pipeline;
+					if (pipeline == null) {
+						properties = properties();
+						pipeline = StanfordPipelineRegistry.acquire(properties);
+						this.pipeline = pipeline;
+					}
+				}
+			}
+			return pipeline;
+		}
+
+		synchronized void release() {
+			if (pipeline != null) {
+				pipeline = null;
+				StanfordPipelineRegistry.release(properties);
+			}
+		}
+	}
+
+	protected volatile StanfordCoreNLP pipeline;
+	private Properties pipelineProperties;
+	// whole documents
+	private final LazyPipeline documentPipeline = new LazyPipeline() {
+		@Override
+		protected Properties properties() {
+			return getPipelineProperties(false);
+		}
+	};
+	// tokenization, tagging and lemmatization only, for the guarded parses
+	private final LazyPipeline preprocessingPipeline = new LazyPipeline() {
+		@Override
+		protected Properties properties() {
+			Properties props = getPipelineProperties(true);
+			props.put("annotators", PREPROCESSING_ANNOTATORS);
+			return props;
+		}
+	};
+	// the parser only, on preprocessed annotations
+	private final LazyPipeline parserPipeline = new LazyPipeline() {
+		@Override
+		protected Properties properties() {
+			return getAnnotatorProperties(backend);
+		}
+	};
+	private final LazyPipeline fallbackPipeline = new LazyPipeline() {
+		@Override
+		protected Properties properties() {
+			return getAnnotatorProperties(fallbackBackend);
+		}
+	};
+	// the tagger and the lemmatizer, for the pre-tokenized sentences
+	private final LazyPipeline taggerPipeline = new LazyPipeline() {
+		@Override
+		protected Properties properties() {
+			return getAnnotatorProperties("pos");
+		}
+	};
+	private final LazyPipeline lemmatizerPipeline = new LazyPipeline() {
+		@Override
+		protected Properties properties() {
+			return getAnnotatorProperties("lemma");
+		}
+	};
 	private DEPENDENCY_TYPE dependencyType;
+	private Backend backend;
+	private SymbolTable symbolTable;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor;
+	private int maxTokens;
+	private long timeout;
+	private Fallback fallback = Fallback.SKIP;
+	private Backend fallbackBackend = Backend.NEURAL;
+	private final ParseStatistics statistics = new ParseStatistics();
+	private boolean keepConstituencyTree;
+	private ScheduledExecutorService watchdog;
+
+	private static final String PREPROCESSING_ANNOTATORS = "tokenize, ssplit, pos, lemma";
 
 	public StanfordParserWrapper() {
-		this.dependencyType = DEPENDENCY_TYPE.BASIC;
+		this(DEPENDENCY_TYPE.BASIC);
 	}
 
 	public StanfordParserWrapper(DEPENDENCY_TYPE type) {
+		this(type, Backend.PCFG);
+	}
+
+	/**
+	 * @param type
+	 *            the type of the dependencies returned by
+	 *            {@link #parse(String)}; all the types can be obtained from a
+	 *            single parse with {@link #parse(String, Set)}.
+	 * @param backend
+	 *            the backend producing the dependencies.
+	 */
+	public StanfordParserWrapper(DEPENDENCY_TYPE type, Backend backend) {
 		this.dependencyType = type;
+		this.backend = backend;
+	}
+
+	/**
+	 * @return the backend producing the dependency graphs.
+	 */
+	public Backend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * @return true if the constituency trees are kept in the dependency
+	 *         graphs.
+	 */
+	public boolean isKeepConstituencyTree() {
+		return keepConstituencyTree;
+	}
+
+	/**
+	 * Set whether the constituency tree built by the PCFG parser must be kept
+	 * in the dependency graph (see
+	 * {@link DependencyGraph#getConstituencyTree()}), so that it can be turned
+	 * into a TreeRepresentation without parsing the sentence again. It has no
+	 * effect with the neural backend, which does not build constituency trees.
+	 * 
+	 * @param keepConstituencyTree
+	 */
+	public void setKeepConstituencyTree(boolean keepConstituencyTree) {
+		this.keepConstituencyTree = keepConstituencyTree;
+	}
+
+	/**
+	 * @return the table where lemmas, parts of speech and relation types are
+	 *         interned, or null if they are not interned.
+	 */
+	public SymbolTable getSymbolTable() {
+		return symbolTable;
+	}
+
+	/**
+	 * Set the table where lemmas, parts of speech and relation types are
+	 * interned, or null (the default) not to intern them. The table grows with
+	 * every new label, so it should be owned by the caller and discarded with
+	 * the graphs.
+	 * 
+	 * @param symbolTable
+	 */
+	public void setSymbolTable(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+	}
+
+	/**
+	 * @return the number of threads used by {@link #parseAll(List)}.
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Set the number of threads used by {@link #parseAll(List)}. By default
+	 * one thread per available processor is used.
+	 * 
+	 * @param numThreads
+	 */
+	public synchronized void setNumThreads(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+		this.numThreads = numThreads;
+		shutdownExecutor();
+	}
+
+	/**
+	 * @return the maximum number of tokens of a sentence, or 0 if there is no
+	 *         limit.
+	 */
+	public int getMaxTokens() {
+		return maxTokens;
+	}
+
+	/**
+	 * Set the maximum number of tokens of a sentence: longer sentences are
+	 * handled according to the fallback. By default there is no limit (0).
+	 * The guards must be configured before parsing.
+	 * 
+	 * @param maxTokens
+	 */
+	public void setMaxTokens(int maxTokens) {
+		if (maxTokens < 0)
+			throw new IllegalArgumentException("The maximum number of tokens cannot be negative");
+		this.maxTokens = maxTokens;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds spent by the parser on a
+	 *         sentence, or 0 if there is no limit.
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Set the maximum time in milliseconds spent by the parser on a sentence:
+	 * when it is exceeded, the parser is interrupted and the sentence is
+	 * handled according to the fallback. Tokenization, tagging and
+	 * lemmatization are not included. By default there is no limit (0). The
+	 * guards must be configured before parsing.
+	 * 
+	 * @param timeout
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout < 0)
+			throw new IllegalArgumentException("The timeout cannot be negative");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return what to do with the sentences exceeding the maximum number of
+	 *         tokens or the timeout.
+	 */
+	public Fallback getFallback() {
+		return fallback;
+	}
+
+	/**
+	 * Set what to do with the sentences exceeding the maximum number of tokens
+	 * or the timeout. By default they are skipped.
+	 * 
+	 * @param fallback
+	 */
+	public void setFallback(Fallback fallback) {
+		this.fallback = fallback;
+	}
+
+	/**
+	 * @return the backend used by {@link Fallback#BACKEND}.
+	 */
+	public Backend getFallbackBackend() {
+		return fallbackBackend;
+	}
+
+	/**
+	 * Set the backend used by {@link Fallback#BACKEND}. By default the neural
+	 * network dependency parser is used.
+	 * 
+	 * @param fallbackBackend
+	 */
+	public void setFallbackBackend(Backend fallbackBackend) {
+		this.fallbackBackend = fallbackBackend;
+	}
+
+	/**
+	 * @return the dependency type, the backends, the guards, the fallback and
+	 *         whether the constituency trees are kept.
+	 */
+	@Override
+	public Object getConfiguration() {
+		return Arrays.asList(dependencyType, backend, maxTokens, timeout, fallback, fallbackBackend,
+				keepConstituencyTree);
+	}
+
+	/**
+	 * @return the counters of the events occurred while parsing.
+	 */
+	public ParseStatistics getStatistics() {
+		return statistics;
 	}
 
 	@Override
-	public void initialize() {
+	public synchronized void initialize() {
+		if (pipeline != null)
+			return;
+		pipelineProperties = getPipelineProperties(true);
+		pipeline = StanfordPipelineRegistry.acquire(pipelineProperties);
+	}
+
+	/**
+	 * Loads in advance the models of the pipelines of this wrapper in the
+	 * {@link StanfordPipelineRegistry}, so that any wrapper with the same
+	 * settings can be initialized without paying the loading cost.
+	 */
+	public void warmUp() {
+		StanfordPipelineRegistry.warmUp(getPipelineProperties(true));
+		StanfordPipelineRegistry.warmUp(getPipelineProperties(false));
+	}
+
+	/**
+	 * @param oneSentence
+	 *            whether the whole text must be treated as a single sentence.
+	 * @return the properties of the CoreNLP pipeline.
+	 */
+	protected Properties getPipelineProperties(boolean oneSentence) {
 		Properties props = new Properties();
-		props.put("ssplit.isOneSentence", true);
-		props.put("annotators", "tokenize, ssplit, pos, lemma, parse");
-		pipeline = new StanfordCoreNLP(props);
+		props.put("ssplit.isOneSentence", Boolean.toString(oneSentence));
+		props.put("annotators", PREPROCESSING_ANNOTATORS + ", " + backend.getAnnotator());
+		return props;
+	}
+
+	/**
+	 * @return the properties of a CoreNLP pipeline made only of the annotator
+	 *         of the given backend, to be run on preprocessed annotations.
+	 */
+	private Properties getAnnotatorProperties(Backend backend) {
+		return getAnnotatorProperties(backend.getAnnotator());
+	}
+
+	/**
+	 * @return the properties of a CoreNLP pipeline made only of the given
+	 *         annotators, to be run on preprocessed annotations.
+	 */
+	private Properties getAnnotatorProperties(String annotators) {
+		Properties props = getPipelineProperties(true);
+		props.put("annotators", annotators);
+		props.put("enforceRequirements", "false");
+		return props;
 	}
 
 	@Override
-	public void finalize() throws Throwable {
-		pipeline = null;
+	public synchronized void finalize() throws Throwable {
+		if (pipeline != null) {
+			pipeline = null;
+			StanfordPipelineRegistry.release(pipelineProperties);
+		}
+		documentPipeline.release();
+		preprocessingPipeline.release();
+		parserPipeline.release();
+		fallbackPipeline.release();
+		taggerPipeline.release();
+		lemmatizerPipeline.release();
+		shutdownExecutor();
+		if (watchdog != null) {
+			watchdog.shutdownNow();
+			watchdog = null;
+		}
 	}
 
+	/**
+	 * Parses a sentence. If the sentence exceeds the maximum number of tokens
+	 * or the timeout, the fallback is applied, and null is returned if the
+	 * sentence is skipped.
+	 */
 	@Override
 	public DependencyGraph parse(String sentenceString) {
+		CoreMap sentence = annotate(sentenceString);
+		return sentence == null ? null : toDependencyGraph(sentence, sentenceString);
+	}
+
+	/**
+	 * Parses a sentence once, and returns its dependency graphs of all the
+	 * given types, which CoreNLP computes from the same annotation. The
+	 * graphs do not share nodes or relations.
+	 * 
+	 * @param sentenceString
+	 *            the sentence to be parsed.
+	 * @param types
+	 *            the requested dependency types.
+	 * @return the dependency graphs of the sentence, by type, or null if the
+	 *         sentence is skipped.
+	 */
+	public Map<DEPENDENCY_TYPE, DependencyGraph> parse(String sentenceString, Set<DEPENDENCY_TYPE> types) {
+		CoreMap sentence = annotate(sentenceString);
+		if (sentence == null)
+			return null;
+		Map<DEPENDENCY_TYPE, DependencyGraph> graphs = new EnumMap<DEPENDENCY_TYPE, DependencyGraph>(
+				DEPENDENCY_TYPE.class);
+		for (DEPENDENCY_TYPE type : types)
+			graphs.put(type, toDependencyGraph(sentence, sentenceString, type));
+		return graphs;
+	}
+
+	/**
+	 * Parses a sentence already split into tokens, e.g. by an upstream
+	 * component, which is joined with single spaces: the start and end offsets
+	 * of the nodes refer to the joined sentence. Only the annotators still
+	 * needed are run: the tagger if no parts of speech are given, the
+	 * lemmatizer if no lemmas are given, and the parser. The maximum number of
+	 * tokens and the timeout are applied as in {@link #parse(String)}.
+	 * 
+	 * @param tokens
+	 *            the tokens of the sentence.
+	 * @param tags
+	 *            the parts of speech of the tokens, or null.
+	 * @param lemmas
+	 *            the lemmas of the tokens, or null.
+	 * @return the dependency graph of the sentence, whose nodes are the given
+	 *         tokens, or null if the sentence is skipped.
+	 */
+	public DependencyGraph parseTokens(List<String> tokens, List<String> tags, List<String> lemmas) {
+		StringBuilder b = new StringBuilder();
+		for (String token : tokens) {
+			if (b.length() > 0)
+				b.append(' ');
+			b.append(token);
+		}
+		return parseTokens(b.toString(), tokens, tags, lemmas);
+	}
+
+	/**
+	 * Parses a sentence already split into tokens, e.g. by an upstream
+	 * component, as {@link #parseTokens(List, List, List)} does. The tokens are
+	 * searched in the sentence, in order, so that the start and end offsets of
+	 * the nodes refer to the given sentence.
+	 * 
+	 * @param sentenceString
+	 *            the text of the sentence.
+	 * @param tokens
+	 *            the tokens of the sentence.
+	 * @param tags
+	 *            the parts of speech of the tokens, or null.
+	 * @param lemmas
+	 *            the lemmas of the tokens, or null.
+	 * @return the dependency graph of the sentence, whose nodes are the given
+	 *         tokens, or null if the sentence is skipped.
+	 * @throws IllegalArgumentException
+	 *             if a token does not occur in the sentence, or the tags or
+	 *             the lemmas are not as many as the tokens.
+	 */
+	public DependencyGraph parseTokens(String sentenceString, List<String> tokens, List<String> tags,
+			List<String> lemmas) {
+		if (tokens.isEmpty())
+			throw new IllegalArgumentException("No tokens");
+		if (tags != null && tags.size() != tokens.size())
+			throw new IllegalArgumentException("Expected " + tokens.size() + " tags instead of " + tags.size());
+		if (lemmas != null && lemmas.size() != tokens.size())
+			throw new IllegalArgumentException("Expected " + tokens.size() + " lemmas instead of " + lemmas.size());
+
+		List<CoreLabel> labels = new ArrayList<CoreLabel>(tokens.size());
+		int offset = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			String token = tokens.get(i);
+			int start = sentenceString.indexOf(token, offset);
+			if (start < 0)
+				throw new IllegalArgumentException("Token \"" + token + "\" not found in \"" + sentenceString + "\"");
+			CoreLabel label = new CoreLabel();
+			label.setWord(token);
+			label.setValue(token);
+			label.setOriginalText(token);
+			label.setBeginPosition(start);
+			label.setEndPosition(start + token.length());
+			label.setIndex(i + 1);
+			label.setSentIndex(0);
+			if (tags != null)
+				label.setTag(tags.get(i));
+			if (lemmas != null)
+				label.setLemma(lemmas.get(i));
+			labels.add(label);
+			offset = start + token.length();
+		}
+
+		CoreMap sentence = new ArrayCoreMap();
+		sentence.set(TextAnnotation.class, sentenceString);
+		sentence.set(TokensAnnotation.class, labels);
+		sentence.set(TokenBeginAnnotation.class, 0);
+		sentence.set(TokenEndAnnotation.class, labels.size());
+		sentence.set(CharacterOffsetBeginAnnotation.class, labels.get(0).beginPosition());
+		sentence.set(CharacterOffsetEndAnnotation.class, offset);
+		sentence.set(SentenceIndexAnnotation.class, 0);
 		Annotation document = new Annotation(sentenceString);
-		pipeline.annotate(document);
-		List<CoreMap> sentences = document.get(SentencesAnnotation.class);
-		CoreMap sentence = sentences.get(0);
+		document.set(TokensAnnotation.class, labels);
+		List<CoreMap> sentences = new ArrayList<CoreMap>(1);
+		sentences.add(sentence);
+		document.set(SentencesAnnotation.class, sentences);
+
+		statistics.sentence();
+		long start = System.nanoTime();
+		try {
+			if (tags == null)
+				taggerPipeline.get().annotate(document);
+			if (lemmas == null)
+				lemmatizerPipeline.get().annotate(document);
+			sentence = annotatePreprocessed(document);
+		} finally {
+			statistics.annotated(System.nanoTime() - start);
+		}
+		return sentence == null ? null : toDependencyGraph(sentence, sentenceString);
+	}
+
+	/**
+	 * Annotates a sentence, applying the per-sentence budget.
+	 * 
+	 * @return the annotated sentence, or null if the sentence is skipped.
+	 */
+	private CoreMap annotate(String sentenceString) {
+		statistics.sentence();
+		long start = System.nanoTime();
+		try {
+			Annotation document = new Annotation(sentenceString);
+			if (maxTokens == 0 && timeout == 0) {
+				pipeline.annotate(document);
+				return document.get(SentencesAnnotation.class).get(0);
+			}
+
+			preprocessingPipeline.get().annotate(document);
+			return annotatePreprocessed(document);
+		} finally {
+			statistics.annotated(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Parses a sentence already tokenized, tagged and lemmatized, applying the
+	 * per-sentence budget.
+	 * 
+	 * @return the annotated sentence, or null if the sentence is skipped.
+	 */
+	private CoreMap annotatePreprocessed(Annotation document) {
+		CoreMap sentence = document.get(SentencesAnnotation.class).get(0);
+		if (maxTokens == 0 && timeout == 0) {
+			parserPipeline.get().annotate(document);
+			return sentence;
+		}
+		int length = sentence.get(TokensAnnotation.class).size();
+		boolean parsed = false;
+		if (maxTokens > 0 && length > maxTokens) {
+			statistics.tooLong();
+			if (fallback == Fallback.TRUNCATE)
+				length = maxTokens;
+		} else {
+			parsed = annotateWithinTimeout(parserPipeline.get(), document);
+			if (!parsed) {
+				statistics.timedOut();
+				length = Math.max(1, length / 2);
+			}
+		}
+		if (!parsed) {
+			switch (fallback) {
+			case TRUNCATE:
+				truncate(document, sentence, length);
+				parsed = annotateWithinTimeout(parserPipeline.get(), document);
+				if (parsed)
+					statistics.truncated();
+				else
+					statistics.timedOut();
+				break;
+			case BACKEND:
+				fallbackPipeline.get().annotate(document);
+				statistics.fallback();
+				parsed = true;
+				break;
+			default:
+				break;
+			}
+		}
+		if (!parsed) {
+			statistics.skipped();
+			return null;
+		}
+		return sentence;
+	}
+
+	/**
+	 * Runs a pipeline on the current thread, interrupting it when the timeout
+	 * expires.
+	 * 
+	 * @return false if the timeout expired.
+	 * @throws RuntimeInterruptedException
+	 *             if the thread was interrupted by someone else, e.g. when a
+	 *             parse is cancelled; the interrupt status is kept.
+	 */
+	private boolean annotateWithinTimeout(StanfordCoreNLP pipeline, Annotation document) {
+		if (timeout == 0) {
+			try {
+				pipeline.annotate(document);
+			} catch (RuntimeInterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw e;
+			}
+			return true;
+		}
+		final Thread worker = Thread.currentThread();
+		// set either by the alarm, before interrupting the worker, or by the
+		// worker, when the annotation completes in time
+		final AtomicBoolean done = new AtomicBoolean();
+		// opened by the alarm once the worker has been interrupted
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		ScheduledFuture<?> alarm = getWatchdog().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (done.compareAndSet(false, true)) {
+					worker.interrupt();
+					interrupted.countDown();
+				}
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+		RuntimeInterruptedException interruption = null;
+		try {
+			pipeline.annotate(document);
+		} catch (RuntimeInterruptedException e) {
+			// raised by the parser when interrupted, by the alarm or not
+			interruption = e;
+		}
+		alarm.cancel(false);
+		if (done.compareAndSet(false, true)) {
+			if (interruption == null)
+				return true;
+			// the alarm did not fire: the interrupt came from elsewhere and must
+			// reach the caller
+			Thread.currentThread().interrupt();
+			throw interruption;
+		}
+		// the alarm may not have interrupted this thread yet: its interrupt
+		// must be cleared here, or it would reach the caller
+		boolean waiting = true;
+		while (waiting) {
+			try {
+				interrupted.await();
+				waiting = false;
+			} catch (InterruptedException e) {
+				// the interrupt of the alarm, cleared by await
+			}
+		}
+		Thread.interrupted();
+		return false;
+	}
+
+	private String intern(String label) {
+		return symbolTable == null ? label : symbolTable.intern(label);
+	}
+
+	private synchronized ScheduledExecutorService getWatchdog() {
+		if (watchdog == null) {
+			watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "StanfordParserWrapper-watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return watchdog;
+	}
+
+	private static void truncate(Annotation document, CoreMap sentence, int length) {
+		List<CoreLabel> tokens = new ArrayList<CoreLabel>(sentence.get(TokensAnnotation.class).subList(0, length));
+		sentence.set(TokensAnnotation.class, tokens);
+		sentence.set(TokenEndAnnotation.class, length);
+		sentence.set(CharacterOffsetEndAnnotation.class, tokens.get(length - 1).endPosition());
+		document.set(TokensAnnotation.class, tokens);
+	}
+
+	/**
+	 * Parses a document made of several sentences. The document is split into
+	 * sentences and annotated by CoreNLP in a single pass, so that the fixed
+	 * cost of an annotation is paid once for the whole document.
+	 * <p>
+	 * The sentence of each graph is the corresponding span of the document,
+	 * while the start and end offsets of the nodes refer to the whole
+	 * document. Node ids restart from 1 in every sentence.
+	 * 
+	 * @param document
+	 *            the text to be parsed.
+	 * @return the dependency graphs of the sentences of the document, in
+	 *         order.
+	 */
+	public List<DependencyGraph> parseDocument(String document) {
+		Annotation annotation = new Annotation(document);
+		long start = System.nanoTime();
+		documentPipeline.get().annotate(annotation);
+		statistics.annotated(System.nanoTime() - start);
+		List<CoreMap> sentences = annotation.get(SentencesAnnotation.class);
+		List<DependencyGraph> graphs = new ArrayList<DependencyGraph>(sentences.size());
+		for (CoreMap sentence : sentences) {
+			int begin = sentence.get(CharacterOffsetBeginAnnotation.class);
+			int end = sentence.get(CharacterOffsetEndAnnotation.class);
+			graphs.add(toDependencyGraph(sentence, document.substring(begin, end)));
+		}
+		return graphs;
+	}
+
+	/**
+	 * Parses the sentences on the worker threads of this wrapper. The graphs
+	 * are returned in the same order as the sentences, with null in place of
+	 * the skipped sentences.
+	 */
+	@Override
+	public List<DependencyGraph> parseAll(List<String> sentences) {
+		return parseInParallel(sentences, new SentenceTask<DependencyGraph>() {
+			@Override
+			public DependencyGraph parse(String sentence) {
+				return StanfordParserWrapper.this.parse(sentence);
+			}
+		});
+	}
+
+	/**
+	 * Parses the sentences on the worker threads of this wrapper, and returns
+	 * the dependency graphs of all the given types of every sentence (see
+	 * {@link #parse(String, Set)}), in the same order as the sentences.
+	 * 
+	 * @param sentences
+	 *            the sentences to be parsed.
+	 * @param types
+	 *            the requested dependency types.
+	 * @return the dependency graphs of the sentences, by type, with null in
+	 *         place of the skipped sentences.
+	 */
+	public List<Map<DEPENDENCY_TYPE, DependencyGraph>> parseAll(List<String> sentences,
+			final Set<DEPENDENCY_TYPE> types) {
+		return parseInParallel(sentences, new SentenceTask<Map<DEPENDENCY_TYPE, DependencyGraph>>() {
+			@Override
+			public Map<DEPENDENCY_TYPE, DependencyGraph> parse(String sentence) {
+				return StanfordParserWrapper.this.parse(sentence, types);
+			}
+		});
+	}
+
+	private interface SentenceTask<T> {
+		T parse(String sentence);
+	}
+
+	private <T> List<T> parseInParallel(List<String> sentences, final SentenceTask<T> task) {
+		List<T> results = new ArrayList<T>(sentences.size());
+		if (numThreads == 1 || sentences.size() < 2) {
+			for (String sentence : sentences)
+				results.add(task.parse(sentence));
+			return results;
+		}
+		ExecutorService workers = getExecutor();
+		List<Future<T>> futures = new ArrayList<Future<T>>(sentences.size());
+		for (final String sentence : sentences) {
+			futures.add(workers.submit(new Callable<T>() {
+				@Override
+				public T call() {
+					return task.parse(sentence);
+				}
+			}));
+		}
+		try {
+			for (Future<T> future : futures)
+				results.add(future.get());
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while parsing", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Error while parsing", e.getCause());
+		}
+		return results;
+	}
+
+	private static void cancel(List<? extends Future<?>> futures) {
+		for (Future<?> future : futures)
+			future.cancel(true);
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "StanfordParserWrapper-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	private synchronized void shutdownExecutor() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Converts a sentence annotated by CoreNLP into a DependencyGraph, with
+	 * the dependency type of this wrapper.
+	 * 
+	 * @param sentence
+	 *            the annotated sentence.
+	 * @param sentenceString
+	 *            the text of the sentence.
+	 * @return the dependency graph of the sentence.
+	 */
+	protected DependencyGraph toDependencyGraph(CoreMap sentence, String sentenceString) {
+		return toDependencyGraph(sentence, sentenceString, dependencyType);
+	}
+
+	/**
+	 * Converts a sentence annotated by CoreNLP into a DependencyGraph.
+	 * 
+	 * @param sentence
+	 *            the annotated sentence.
+	 * @param sentenceString
+	 *            the text of the sentence.
+	 * @param dependencyType
+	 *            the type of the dependencies.
+	 * @return the dependency graph of the sentence.
+	 */
+	protected DependencyGraph toDependencyGraph(CoreMap sentence, String sentenceString,
+			DEPENDENCY_TYPE dependencyType) {
+		long start = System.nanoTime();
 		DependencyGraph graph = new DependencyGraph();
 		graph.setSentence(sentenceString);
 		graph.setParserName("StanfordParser");
@@ -80,16 +966,14 @@ public class StanfordParserWrapper implements DependencyParser {
 		int nId = 1;
 		for (CoreLabel token : sentence.get(TokensAnnotation.class)) {
 			DGNode node = new DGNode();
-			Map<String, Object> nodeProps = new HashMap<String, Object>();
-			nodeProps.put("surface", token.originalText());
-			nodeProps.put("lemma", token.lemma());
-			nodeProps.put("pos", token.tag());
-			nodeProps.put("start", token.beginPosition());
-			nodeProps.put("end", token.endPosition());
-			nodeProps.put("id", nId);
+			node.setSurface(token.originalText());
+			node.setLemma(intern(token.lemma()));
+			node.setPos(intern(token.tag()));
+			node.setStart(token.beginPosition());
+			node.setEnd(token.endPosition());
+			node.setId(nId);
 			nId++;
 			graph.getNodes().add(node);
-			node.setProperties(nodeProps);
 		}
 
 		SemanticGraph dependencies = null;
@@ -109,48 +993,92 @@ public class StanfordParserWrapper implements DependencyParser {
 			dependencies = sentence.get(BasicDependenciesAnnotation.class);
 			break;
 		}
-		dependencies.edgeListSorted();
-		List<DGRelation> relations = new ArrayList<DGRelation>();
-		for (IndexedWord node : dependencies.vertexListSorted()) {
+		List<DGNode> nodes = graph.getNodes();
+		List<DGRelation> relations = new ArrayList<DGRelation>(nodes.size());
+		for (IndexedWord node : sortedVertices(dependencies, nodes.size())) {
 			DGRelation relation = new DGRelation();
-			relation.setProperties(new HashMap<String, Object>());
-			DGNode child = graph.getDGNodeById(node.index());
-			relation.setTarget(child);
-
-			Collection<IndexedWord> parentsTmp = dependencies.getParents(node);
-			ArrayList<IndexedWord> parents = new ArrayList<IndexedWord>();
-			for (IndexedWord par : parentsTmp) {
-				SemanticGraphEdge edge = dependencies.getEdge(par, node);
-				DGNode parent = graph.getDGNodeById(edge.getGovernor().index());
-				if (parent.getProperties().get("id") != child.getProperties()
-						.get("id"))
-					parents.add(par);
+			int index = node.index();
+			relation.setTarget(nodes.get(index - 1));
+
+			// the incoming edges are grouped by governor: the relation is the
+			// first edge from the last governor, self loops excluded
+			SemanticGraphEdge head = null;
+			IndexedWord governor = null;
+			for (SemanticGraphEdge edge : dependencies.incomingEdgeIterable(node)) {
+				if (edge.getGovernor().index() == index)
+					continue;
+				if (!edge.getGovernor().equals(governor)) {
+					governor = edge.getGovernor();
+					head = edge;
+				}
 			}
 
-			if (parents.isEmpty()) {
-				relation.getProperties().put("type", "root");
-				relation.getProperties().put("fromId", new Integer(0));
+			if (head == null) {
+				relation.setType("root");
+				relation.setFromId(0);
 				relation.setSource(null);
 				graph.setRoot(relation);
 			} else {
-				Iterator<IndexedWord> it = parents.iterator();
-				while (it.hasNext()) {
-					IndexedWord par = it.next();
-					SemanticGraphEdge edge = dependencies.getEdge(par, node);
-					DGNode parent = graph.getDGNodeById(edge.getGovernor()
-							.index());
-
-					relation.setSource(parent);
-					relation.getProperties().put("fromId",
-							parent.getProperties().get("id"));
-					relation.getProperties().put("type",
-							edge.getRelation().toString());
-				}
+				DGNode parent = nodes.get(head.getGovernor().index() - 1);
+				relation.setSource(parent);
+				relation.setFromId(parent.getId());
+				relation.setType(intern(head.getRelation().toString()));
 			}
 			relations.add(relation);
 		}
 
 		graph.setRelations(relations);
+
+		if (keepConstituencyTree) {
+			Tree tree = sentence.get(TreeAnnotation.class);
+			if (tree != null)
+				graph.setConstituencyTree(toConstituencyNode(tree, graph.getNodes(), new int[1]));
+		}
+		statistics.converted(System.nanoTime() - start);
 		return graph;
 	}
+
+	/**
+	 * Returns the vertices of a dependency graph sorted by index, with a
+	 * bucket sort when every index occurs once, as it does unless CoreNLP
+	 * added copy nodes.
+	 */
+	private static Collection<IndexedWord> sortedVertices(SemanticGraph dependencies, int tokens) {
+		IndexedWord[] byIndex = new IndexedWord[tokens + 1];
+		int size = 0;
+		for (IndexedWord vertex : dependencies.vertexSet()) {
+			int index = vertex.index();
+			if (index < 1 || index > tokens || byIndex[index] != null)
+				return dependencies.vertexListSorted();
+			byIndex[index] = vertex;
+			size++;
+		}
+		List<IndexedWord> vertices = new ArrayList<IndexedWord>(size);
+		for (IndexedWord vertex : byIndex) {
+			if (vertex != null)
+				vertices.add(vertex);
+		}
+		return vertices;
+	}
+
+	/**
+	 * Converts a CoreNLP constituency tree, whose leaves are the tokens of the
+	 * sentence in order.
+	 * 
+	 * @param leafCount
+	 *            the number of leaves already visited.
+	 */
+	private ConstituencyNode toConstituencyNode(Tree tree, List<DGNode> tokens, int[] leafCount) {
+		if (tree.isLeaf()) {
+			int index = leafCount[0]++;
+			DGNode token = index < tokens.size() ? tokens.get(index) : null;
+			ConstituencyNode leaf = new ConstituencyNode(token != null ? token.getSurface() : tree.value());
+			leaf.setToken(token);
+			return leaf;
+		}
+		ConstituencyNode node = new ConstituencyNode(intern(tree.value()));
+		for (Tree child : tree.children())
+			node.getChildren().add(toConstituencyNode(child, tokens, leafCount));
+		return node;
+	}
 }
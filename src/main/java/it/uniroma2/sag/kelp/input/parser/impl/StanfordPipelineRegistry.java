@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.parser.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/**
+ * A process-wide registry of CoreNLP pipelines, keyed by their configuration.
+ * Loading the models of a pipeline takes several seconds and hundreds of MB,
+ * so all the parsers configured with identical properties share a single
+ * pipeline.
+ * <p>
+ * A pipeline is loaded by the first {@link #acquire(Properties)} and is
+ * discarded when every acquired reference has been released with
+ * {@link #release(Properties)}, unless it was loaded in advance with
+ * {@link #warmUp(Properties)}. Pipelines with different configurations can be
+ * loaded concurrently.
+ */
+public final class StanfordPipelineRegistry {
+
+	private static final Map<Map<String, String>, Entry> ENTRIES = new HashMap<Map<String, String>, Entry>();
+
+	private static class Entry {
+		private int references;
+		private boolean pinned;
+		private volatile StanfordCoreNLP pipeline;
+
+		synchronized StanfordCoreNLP load(Properties props) {
+			if (pipeline == null)
+				pipeline = new StanfordCoreNLP(props);
+			return pipeline;
+		}
+	}
+
+	private StanfordPipelineRegistry() {
+	}
+
+	/**
+	 * Returns the pipeline configured with the given properties, loading it if
+	 * needed, and increments its reference count. Every call must be balanced
+	 * by a call to {@link #release(Properties)} with equal properties.
+	 *
+	 * @param props
+	 *            the configuration of the pipeline.
+	 * @return the shared pipeline.
+	 */
+	public static StanfordCoreNLP acquire(Properties props) {
+		return load(props, false);
+	}
+
+	/**
+	 * Releases a reference acquired with {@link #acquire(Properties)}. When no
+	 * reference is left, the pipeline is discarded, unless it was warmed up.
+	 *
+	 * @param props
+	 *            the configuration of the pipeline.
+	 */
+	public static void release(Properties props) {
+		Map<String, String> key = keyOf(props);
+		synchronized (ENTRIES) {
+			Entry entry = ENTRIES.get(key);
+			if (entry == null || entry.references == 0)
+				throw new IllegalStateException("The pipeline has not been acquired: " + key);
+			entry.references--;
+			if (entry.references == 0 && !entry.pinned)
+				ENTRIES.remove(key);
+		}
+	}
+
+	/**
+	 * Loads in advance the pipeline configured with the given properties, so
+	 * that the following {@link #acquire(Properties)} calls do not pay the
+	 * loading cost. A warmed up pipeline stays loaded until {@link #clear()}
+	 * is invoked.
+	 *
+	 * @param props
+	 *            the configuration of the pipeline.
+	 */
+	public static void warmUp(Properties props) {
+		load(props, true);
+	}
+
+	/**
+	 * @param props
+	 *            the configuration of a pipeline.
+	 * @return true if the pipeline configured with the given properties is
+	 *         loaded.
+	 */
+	public static boolean isLoaded(Properties props) {
+		synchronized (ENTRIES) {
+			Entry entry = ENTRIES.get(keyOf(props));
+			return entry != null && entry.pipeline != null;
+		}
+	}
+
+	/**
+	 * @param props
+	 *            the configuration of a pipeline.
+	 * @return the number of references currently acquired on the pipeline.
+	 */
+	public static int getReferenceCount(Properties props) {
+		synchronized (ENTRIES) {
+			Entry entry = ENTRIES.get(keyOf(props));
+			return entry == null ? 0 : entry.references;
+		}
+	}
+
+	/**
+	 * Discards all the pipelines that are not referenced, including the warmed
+	 * up ones.
+	 */
+	public static void clear() {
+		synchronized (ENTRIES) {
+			Iterator<Entry> it = ENTRIES.values().iterator();
+			while (it.hasNext()) {
+				Entry entry = it.next();
+				entry.pinned = false;
+				if (entry.references == 0)
+					it.remove();
+			}
+		}
+	}
+
+	private static StanfordCoreNLP load(Properties props, boolean pin) {
+		Map<String, String> key = keyOf(props);
+		Entry entry;
+		boolean pinned;
+		synchronized (ENTRIES) {
+			entry = ENTRIES.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				ENTRIES.put(key, entry);
+			}
+			pinned = entry.pinned;
+			if (pin)
+				entry.pinned = true;
+			else
+				entry.references++;
+		}
+		// the models are loaded outside of the registry lock, so that loading a
+		// pipeline does not block the ones with a different configuration
+		try {
+			return entry.load(props);
+		} catch (RuntimeException e) {
+			// only the reference of this caller is dropped, as the others may
+			// still load the pipeline and release it
+			synchronized (ENTRIES) {
+				if (pin)
+					entry.pinned = pinned;
+				else
+					entry.references--;
+				if (entry.references == 0 && !entry.pinned && ENTRIES.get(key) == entry)
+					ENTRIES.remove(key);
+			}
+			throw e;
+		}
+	}
+
+	private static Map<String, String> keyOf(Properties props) {
+		Map<String, String> key = new TreeMap<String, String>();
+		for (String name : props.stringPropertyNames())
+			key.put(name, props.getProperty(name).trim());
+		return key;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.parser.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class models a node of the constituency tree of a sentence, e.g. a
+ * phrase (S, NP, VP, ...), a part of speech or a word. The leaves of the tree
+ * are the words of the sentence, and refer to the corresponding nodes of the
+ * DependencyGraph of the sentence.
+ */
+public class ConstituencyNode {
+	private String label;
+	private List<ConstituencyNode> children;
+	private DGNode token;
+	private boolean frozen;
+
+	public ConstituencyNode() {
+		this.children = new ArrayList<ConstituencyNode>(2);
+	}
+
+	/**
+	 * @param label
+	 *            the label of the node.
+	 */
+	public ConstituencyNode(String label) {
+		this();
+		this.label = label;
+	}
+
+	/**
+	 * @return the label of this node, i.e. the name of a phrase, a part of
+	 *         speech or a word.
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Set the label of this node.
+	 *
+	 * @param label
+	 */
+	public void setLabel(String label) {
+		checkNotFrozen();
+		this.label = label;
+	}
+
+	/**
+	 * @return the children of this node, from left to right.
+	 */
+	public List<ConstituencyNode> getChildren() {
+		return children;
+	}
+
+	/**
+	 * Set the children of this node.
+	 *
+	 * @param children
+	 */
+	public void setChildren(List<ConstituencyNode> children) {
+		checkNotFrozen();
+		this.children = children;
+	}
+
+	/**
+	 * @return the node of the dependency graph corresponding to this leaf, or
+	 *         null.
+	 */
+	public DGNode getToken() {
+		return token;
+	}
+
+	/**
+	 * Set the node of the dependency graph corresponding to this leaf.
+	 *
+	 * @param token
+	 */
+	public void setToken(DGNode token) {
+		checkNotFrozen();
+		this.token = token;
+	}
+
+	/**
+	 * @return true if this node is a word.
+	 */
+	public boolean isLeaf() {
+		return children == null || children.isEmpty();
+	}
+
+	/**
+	 * @return true if this node is a part of speech, i.e. its only child is a
+	 *         word.
+	 */
+	public boolean isPreterminal() {
+		return children != null && children.size() == 1 && children.get(0).isLeaf();
+	}
+
+	/**
+	 * @return true if this node cannot be modified anymore, i.e. it belongs to
+	 *         a frozen DependencyGraph.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	void freeze() {
+		if (frozen)
+			return;
+		if (children != null) {
+			for (ConstituencyNode child : children)
+				child.freeze();
+			children = Collections.unmodifiableList(new ArrayList<ConstituencyNode>(children));
+		}
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new UnsupportedOperationException("The node is frozen");
+	}
+
+	/**
+	 * @return the tree rooted in this node in the Penn Treebank bracketed
+	 *         format.
+	 */
+	@Override
+	public String toString() {
+		if (isLeaf())
+			return label;
+		StringBuilder b = new StringBuilder();
+		b.append('(').append(label);
+		for (ConstituencyNode child : children)
+			b.append(' ').append(child);
+		return b.append(')').toString();
+	}
+}
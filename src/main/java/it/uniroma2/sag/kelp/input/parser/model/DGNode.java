@@ -15,27 +15,282 @@
 
 package it.uniroma2.sag.kelp.input.parser.model;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
- * This class models a node in a dependency graph. It is made of a Map<String, Object> that is meant to contain
- * all the information associated to this node (e.g, surface, lemma, part of speech).
+ * This class models a node in a dependency graph. The standard information
+ * associated to a node (id, start and end offsets, surface, lemma and part of
+ * speech) is stored in typed fields, while any other information is stored in
+ * an extension map that is created only when needed.
+ * <p>
+ * All the information is also available through the Map<String, Object>
+ * returned by {@link #getProperties()}, using the keys "id", "start", "end",
+ * "surface", "lemma" and "pos" for the standard properties.
  */
 public class DGNode {
-	private Map<String, Object> properties;
+	public static final String ID = "id";
+	public static final String START = "start";
+	public static final String END = "end";
+	public static final String SURFACE = "surface";
+	public static final String LEMMA = "lemma";
+	public static final String POS = "pos";
+
+	private static final String[] STANDARD_KEYS = { ID, START, END, SURFACE, LEMMA, POS };
+	private static final int ID_SET = 1;
+	private static final int START_SET = 2;
+	private static final int END_SET = 4;
+
+	private int id;
+	private int start;
+	private int end;
+	private byte setFields;
+	private String surface;
+	private String lemma;
+	private String pos;
+	private Map<String, Object> extension;
+	private boolean frozen;
+
+	/**
+	 * @return the id of this node, or -1 if it is not set.
+	 */
+	public int getId() {
+		return (setFields & ID_SET) != 0 ? id : -1;
+	}
+
+	boolean hasId() {
+		return (setFields & ID_SET) != 0;
+	}
+
+	/**
+	 * Set the id of this node.
+	 *
+	 * @param id
+	 */
+	public void setId(int id) {
+		checkNotFrozen();
+		this.id = id;
+		setFields |= ID_SET;
+	}
+
+	/**
+	 * @return the start offset of this node in the sentence, or -1 if it is
+	 *         not set.
+	 */
+	public int getStart() {
+		return (setFields & START_SET) != 0 ? start : -1;
+	}
+
+	/**
+	 * Set the start offset of this node in the sentence.
+	 *
+	 * @param start
+	 */
+	public void setStart(int start) {
+		checkNotFrozen();
+		this.start = start;
+		setFields |= START_SET;
+	}
+
+	/**
+	 * @return the end offset of this node in the sentence, or -1 if it is not
+	 *         set.
+	 */
+	public int getEnd() {
+		return (setFields & END_SET) != 0 ? end : -1;
+	}
+
+	/**
+	 * Set the end offset of this node in the sentence.
+	 *
+	 * @param end
+	 */
+	public void setEnd(int end) {
+		checkNotFrozen();
+		this.end = end;
+		setFields |= END_SET;
+	}
+
+	/**
+	 * @return the surface form of this node.
+	 */
+	public String getSurface() {
+		return surface;
+	}
+
+	/**
+	 * Set the surface form of this node.
+	 *
+	 * @param surface
+	 */
+	public void setSurface(String surface) {
+		checkNotFrozen();
+		this.surface = surface;
+	}
+
+	/**
+	 * @return the lemma of this node.
+	 */
+	public String getLemma() {
+		return lemma;
+	}
+
+	/**
+	 * Set the lemma of this node.
+	 *
+	 * @param lemma
+	 */
+	public void setLemma(String lemma) {
+		checkNotFrozen();
+		this.lemma = lemma;
+	}
+
+	/**
+	 * @return the part of speech of this node.
+	 */
+	public String getPos() {
+		return pos;
+	}
+
+	/**
+	 * Set the part of speech of this node.
+	 *
+	 * @param pos
+	 */
+	public void setPos(String pos) {
+		checkNotFrozen();
+		this.pos = pos;
+	}
 
 	/**
-	 * @return the properties associated to this node.
+	 * @return a modifiable view of the properties associated to this node,
+	 *         backed by the node: a new view is returned by every invocation,
+	 *         and changes to any view are changes to the node.
 	 */
 	public Map<String, Object> getProperties() {
-		return properties;
+		return new NodeProperties();
 	}
 
 	/**
-	 * Set the properties associated to this node.
+	 * Set the properties associated to this node. The content of the map is
+	 * copied in this node, replacing all the existing properties: the map is
+	 * not retained, so later changes to it are not reflected in this node.
+	 * Modify the node through its setters or {@link #getProperties()} instead.
+	 *
 	 * @param properties
 	 */
 	public void setProperties(Map<String, Object> properties) {
-		this.properties = properties;
+		checkNotFrozen();
+		if (properties instanceof PropertiesView)
+			properties = new HashMap<String, Object>(properties);
+		Map<String, Object> view = new NodeProperties();
+		view.clear();
+		extension = null;
+		if (properties != null)
+			view.putAll(properties);
+	}
+
+	/**
+	 * @return true if this node cannot be modified anymore, i.e. it belongs to a
+	 *         frozen DependencyGraph.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	void freeze() {
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new UnsupportedOperationException("The node is frozen");
+	}
+
+	private class NodeProperties extends PropertiesView {
+
+		@Override
+		protected String[] standardKeys() {
+			return STANDARD_KEYS;
+		}
+
+		@Override
+		protected Object getStandard(int slot) {
+			switch (slot) {
+			case 0:
+				return (setFields & ID_SET) != 0 ? Integer.valueOf(id) : null;
+			case 1:
+				return (setFields & START_SET) != 0 ? Integer.valueOf(start) : null;
+			case 2:
+				return (setFields & END_SET) != 0 ? Integer.valueOf(end) : null;
+			case 3:
+				return surface;
+			case 4:
+				return lemma;
+			default:
+				return pos;
+			}
+		}
+
+		@Override
+		protected boolean setStandard(int slot, Object value) {
+			if (slot < 3) {
+				if (!(value instanceof Integer))
+					return false;
+				int intValue = (Integer) value;
+				if (slot == 0)
+					setId(intValue);
+				else if (slot == 1)
+					setStart(intValue);
+				else
+					setEnd(intValue);
+				return true;
+			}
+			if (!(value instanceof String))
+				return false;
+			if (slot == 3)
+				surface = (String) value;
+			else if (slot == 4)
+				lemma = (String) value;
+			else
+				pos = (String) value;
+			return true;
+		}
+
+		@Override
+		protected void clearStandard(int slot) {
+			switch (slot) {
+			case 0:
+				setFields &= ~ID_SET;
+				break;
+			case 1:
+				setFields &= ~START_SET;
+				break;
+			case 2:
+				setFields &= ~END_SET;
+				break;
+			case 3:
+				surface = null;
+				break;
+			case 4:
+				lemma = null;
+				break;
+			default:
+				pos = null;
+				break;
+			}
+		}
+
+		@Override
+		protected Map<String, Object> extension(boolean create) {
+			if (extension == null && create)
+				extension = new HashMap<String, Object>(4);
+			return extension;
+		}
+
+		@Override
+		protected boolean isFrozen() {
+			return frozen;
+		}
 	}
 }
@@ -15,17 +15,30 @@
 
 package it.uniroma2.sag.kelp.input.parser.model;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * This class models a relation in a dependency graph. It is made of a source and target nodes, modeling
  * respectively the source of a dependency relation and its target.
- * Properties associated to this relation (e.g., dependency type) must be added to the properties map.
+ * The dependency type and the id of the source node are stored in typed fields, while any other property
+ * associated to this relation is stored in an extension map that is created only when needed. All of them
+ * are also available through the map returned by {@link #getProperties()}, using the keys "type" and
+ * "fromId" for the standard properties.
  */
 public class DGRelation {
+	public static final String TYPE = "type";
+	public static final String FROM_ID = "fromId";
+
+	private static final String[] STANDARD_KEYS = { TYPE, FROM_ID };
+
 	private DGNode source;
 	private DGNode target;
-	private Map<String, Object> properties;
+	private String type;
+	private int fromId;
+	private boolean fromIdSet;
+	private Map<String, Object> extension;
+	private boolean frozen;
 
 	/**
 	 * @return the source node in this relation.
@@ -39,6 +52,7 @@ public class DGRelation {
 	 * @param source
 	 */
 	public void setSource(DGNode source) {
+		checkNotFrozen();
 		this.source = source;
 	}
 
@@ -54,21 +68,133 @@ public class DGRelation {
 	 * @param target
 	 */
 	public void setTarget(DGNode target) {
+		checkNotFrozen();
 		this.target = target;
 	}
 
 	/**
-	 * @return the properties map associated to this relation.
+	 * @return the dependency type of this relation.
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Set the dependency type of this relation.
+	 * @param type
+	 */
+	public void setType(String type) {
+		checkNotFrozen();
+		this.type = type;
+	}
+
+	/**
+	 * @return the id of the source node of this relation (0 for the root relation), or -1 if it is not set.
+	 */
+	public int getFromId() {
+		return fromIdSet ? fromId : -1;
+	}
+
+	/**
+	 * Set the id of the source node of this relation.
+	 * @param fromId
+	 */
+	public void setFromId(int fromId) {
+		checkNotFrozen();
+		this.fromId = fromId;
+		this.fromIdSet = true;
+	}
+
+	/**
+	 * @return a modifiable view of the properties map associated to this relation, backed by the
+	 *         relation: a new view is returned by every invocation, and changes to any view are changes
+	 *         to the relation.
 	 */
 	public Map<String, Object> getProperties() {
-		return properties;
+		return new RelationProperties();
 	}
 
 	/**
-	 * Set the properties map associated to this relation.
+	 * Set the properties map associated to this relation. The content of the map is copied in this
+	 * relation, replacing all the existing properties: the map is not retained, so later changes to it
+	 * are not reflected in this relation. Modify the relation through its setters or
+	 * {@link #getProperties()} instead.
 	 * @param properties
 	 */
 	public void setProperties(Map<String, Object> properties) {
-		this.properties = properties;
+		checkNotFrozen();
+		if (properties instanceof PropertiesView)
+			properties = new HashMap<String, Object>(properties);
+		Map<String, Object> view = new RelationProperties();
+		view.clear();
+		extension = null;
+		if (properties != null)
+			view.putAll(properties);
+	}
+
+	/**
+	 * @return true if this relation cannot be modified anymore, i.e. it belongs to a
+	 *         frozen DependencyGraph.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	void freeze() {
+		frozen = true;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new UnsupportedOperationException("The relation is frozen");
+	}
+
+	private class RelationProperties extends PropertiesView {
+
+		@Override
+		protected String[] standardKeys() {
+			return STANDARD_KEYS;
+		}
+
+		@Override
+		protected Object getStandard(int slot) {
+			if (slot == 0)
+				return type;
+			return fromIdSet ? Integer.valueOf(fromId) : null;
+		}
+
+		@Override
+		protected boolean setStandard(int slot, Object value) {
+			if (slot == 0) {
+				if (!(value instanceof String))
+					return false;
+				type = (String) value;
+				return true;
+			}
+			if (!(value instanceof Integer))
+				return false;
+			setFromId((Integer) value);
+			return true;
+		}
+
+		@Override
+		protected void clearStandard(int slot) {
+			if (slot == 0)
+				type = null;
+			else
+				fromIdSet = false;
+		}
+
+		@Override
+		protected Map<String, Object> extension(boolean create) {
+			if (extension == null && create)
+				extension = new HashMap<String, Object>(4);
+			return extension;
+		}
+
+		@Override
+		protected boolean isFrozen() {
+			return frozen;
+		}
 	}
 }
@@ -16,10 +16,24 @@
 package it.uniroma2.sag.kelp.input.parser.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class models a dependency graph of a sentence.
+ * <p>
+ * A graph can be made immutable with {@link #freeze()}. A frozen graph, its
+ * nodes and its relations reject any modification, and all the indexes of the
+ * graph are computed once when it is frozen. A frozen graph can therefore be
+ * shared among threads, e.g. to generate different tree representations in
+ * parallel, provided it is published to them after freeze() returns (e.g.
+ * through a concurrent collection or an executor). A graph that is not frozen
+ * must not be used by more than one thread at a time.
  */
 public class DependencyGraph {
 	private String sentence;
@@ -28,6 +42,22 @@ public class DependencyGraph {
 	private List<DGRelation> relations;
 	private DGRelation root;
 	private List<DGNode> nodes;
+	private ConstituencyNode constituencyTree;
+	/**
+	 * Lazily built index from a source node to the relations starting from it,
+	 * sorted by the start offset of their target node.
+	 */
+	private volatile Map<DGNode, List<DGRelation>> childIndex;
+	/**
+	 * Lazily built index from a node id to the node.
+	 */
+	private volatile NodeIdIndex idIndex;
+	/**
+	 * Values derived from this graph, e.g. the labels computed by a label
+	 * generator, created on first use.
+	 */
+	private volatile ConcurrentMap<Object, Object> cachedValues;
+	private volatile boolean frozen;
 
 	/**
 	 * @return the sentence string associated to this graph.
@@ -42,6 +72,7 @@ public class DependencyGraph {
 	 * @param sentence
 	 */
 	public void setSentence(String sentence) {
+		checkNotFrozen();
 		this.sentence = sentence;
 	}
 
@@ -58,6 +89,7 @@ public class DependencyGraph {
 	 * @param parserName
 	 */
 	public void setParserName(String parserName) {
+		checkNotFrozen();
 		this.parserName = parserName;
 	}
 
@@ -75,6 +107,7 @@ public class DependencyGraph {
 	 * @param parserVersion
 	 */
 	public void setParserVersion(String parserVersion) {
+		checkNotFrozen();
 		this.parserVersion = parserVersion;
 	}
 
@@ -91,7 +124,9 @@ public class DependencyGraph {
 	 * @param relations
 	 */
 	public void setRelations(List<DGRelation> relations) {
+		checkNotFrozen();
 		this.relations = relations;
+		invalidateIndexes();
 	}
 
 	/**
@@ -107,6 +142,7 @@ public class DependencyGraph {
 	 * @param root
 	 */
 	public void setRoot(DGRelation root) {
+		checkNotFrozen();
 		this.root = root;
 	}
 
@@ -124,7 +160,126 @@ public class DependencyGraph {
 	 * @param nodes
 	 */
 	public void setNodes(List<DGNode> nodes) {
+		checkNotFrozen();
 		this.nodes = nodes;
+		invalidateIndexes();
+	}
+
+	/**
+	 * @return the constituency tree of the sentence, if it was kept by the
+	 *         parser, or null.
+	 */
+	public ConstituencyNode getConstituencyTree() {
+		return constituencyTree;
+	}
+
+	/**
+	 * Set the constituency tree of the sentence. Its leaves should refer to
+	 * the nodes of this graph.
+	 * 
+	 * @param constituencyTree
+	 */
+	public void setConstituencyTree(ConstituencyNode constituencyTree) {
+		checkNotFrozen();
+		this.constituencyTree = constituencyTree;
+	}
+
+	/**
+	 * Drops the indexes computed on this graph. The indexes are automatically
+	 * dropped by {@link #setNodes(List)} and {@link #setRelations(List)}; this
+	 * method must be called only when the lists returned by
+	 * {@link #getNodes()} and {@link #getRelations()}, or the nodes and
+	 * relations they contain, are modified in place after a lookup.
+	 */
+	public void invalidateIndexes() {
+		if (frozen)
+			return;
+		childIndex = null;
+		idIndex = null;
+		cachedValues = null;
+	}
+
+	/**
+	 * Makes this graph, its nodes and its relations immutable, and computes
+	 * all the indexes of the graph. Any later attempt to modify them throws an
+	 * UnsupportedOperationException.
+	 * 
+	 * @return this graph.
+	 */
+	public DependencyGraph freeze() {
+		if (frozen)
+			return this;
+		if (nodes != null) {
+			for (DGNode node : nodes)
+				node.freeze();
+			nodes = Collections.unmodifiableList(new ArrayList<DGNode>(nodes));
+		}
+		if (relations != null) {
+			for (DGRelation relation : relations)
+				relation.freeze();
+			relations = Collections.unmodifiableList(new ArrayList<DGRelation>(relations));
+		}
+		if (root != null)
+			root.freeze();
+		if (constituencyTree != null)
+			constituencyTree.freeze();
+		childIndex = buildChildIndex();
+		idIndex = new NodeIdIndex(nodes);
+		cachedValues = new ConcurrentHashMap<Object, Object>();
+		frozen = true;
+		return this;
+	}
+
+	/**
+	 * @return true if this graph has been frozen.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Retrieves a value derived from this graph and stored with
+	 * {@link #cacheValue(Object, Object)}. Cached values are dropped together
+	 * with the indexes of the graph.
+	 * 
+	 * @param key
+	 *            the key identifying the value.
+	 * @return the cached value, or null if there is none.
+	 */
+	public Object getCachedValue(Object key) {
+		ConcurrentMap<Object, Object> values = cachedValues;
+		return values == null ? null : values.get(key);
+	}
+
+	/**
+	 * Stores a value derived from this graph, unless a value is already
+	 * stored with the same key.
+	 * 
+	 * @param key
+	 *            the key identifying the value.
+	 * @param value
+	 *            the value to be stored.
+	 * @return the value stored in the cache, i.e. the given value or the one
+	 *         previously stored with the same key.
+	 */
+	public Object cacheValue(Object key, Object value) {
+		ConcurrentMap<Object, Object> values = cachedValues;
+		if (values == null) {
+			synchronized (this) {
+				values = cachedValues;
+				if (values == null) {
+					values = new ConcurrentHashMap<Object, Object>();
+					cachedValues = values;
+				}
+			}
+		}
+		Object previous = values.putIfAbsent(key, value);
+		return previous == null ? value : previous;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new UnsupportedOperationException("The dependency graph is frozen");
 	}
 
 	/**
@@ -135,27 +290,123 @@ public class DependencyGraph {
 	 * @return
 	 */
 	public DGNode getDGNodeById(int index) {
-		for (DGNode dgNode : nodes) {
-			if ((Integer) dgNode.getProperties().get("id") == index)
-				return dgNode;
+		NodeIdIndex ids = idIndex;
+		if (ids == null) {
+			ids = new NodeIdIndex(nodes);
+			idIndex = ids;
+		}
+		DGNode node = ids.get(index);
+		if (node == null && nodes != null && nodes.size() != ids.size) {
+			// nodes have been added in place after the index was built
+			ids = new NodeIdIndex(nodes);
+			idIndex = ids;
+			node = ids.get(index);
 		}
-		return null;
+		return node;
 	}
 
 	/**
 	 * Utility method to find all the relations with a specific source node.
+	 * The relations are sorted by the start offset of their target node. The
+	 * returned list is shared and cannot be modified.
 	 * 
 	 * @param node
 	 *            the source node.
 	 * @return
 	 */
 	public List<DGRelation> getRelationsWithSource(DGNode node) {
-		List<DGRelation> ret = new ArrayList<DGRelation>();
-		for (DGRelation dgRelation : relations) {
-			if (dgRelation.getSource() != null
-					&& dgRelation.getSource().equals(node))
-				ret.add(dgRelation);
+		Map<DGNode, List<DGRelation>> index = childIndex;
+		if (index == null) {
+			index = buildChildIndex();
+			childIndex = index;
 		}
+		List<DGRelation> ret = index.get(node);
+		if (ret == null)
+			return Collections.emptyList();
 		return ret;
 	}
+
+	private Map<DGNode, List<DGRelation>> buildChildIndex() {
+		Map<DGNode, List<DGRelation>> index = new HashMap<DGNode, List<DGRelation>>();
+		if (relations == null)
+			return index;
+		for (DGRelation dgRelation : relations) {
+			if (dgRelation.getSource() == null)
+				continue;
+			List<DGRelation> children = index.get(dgRelation.getSource());
+			if (children == null) {
+				children = new ArrayList<DGRelation>(2);
+				index.put(dgRelation.getSource(), children);
+			}
+			children.add(dgRelation);
+		}
+		for (Map.Entry<DGNode, List<DGRelation>> entry : index.entrySet()) {
+			List<DGRelation> children = entry.getValue();
+			if (children.size() > 1)
+				Collections.sort(children, TARGET_START_ORDER);
+			entry.setValue(Collections.unmodifiableList(children));
+		}
+		return index;
+	}
+
+	/**
+	 * Orders relations by the start offset of their target node. Collections.sort
+	 * is stable, so relations whose targets have no offset keep their order.
+	 */
+	private static final Comparator<DGRelation> TARGET_START_ORDER = new Comparator<DGRelation>() {
+		@Override
+		public int compare(DGRelation r1, DGRelation r2) {
+			int s1 = startOf(r1.getTarget());
+			int s2 = startOf(r2.getTarget());
+			return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+		}
+	};
+
+	private static int startOf(DGNode node) {
+		if (node == null || node.getStart() < 0)
+			return Integer.MAX_VALUE;
+		return node.getStart();
+	}
+
+	/**
+	 * Index from node ids to nodes. Parsers number the nodes from 1 to n, so
+	 * ids in [0, n] are stored in an array; any other id falls back to a map.
+	 * Nodes without an id are not indexed.
+	 */
+	private static final class NodeIdIndex {
+		private final DGNode[] dense;
+		private final Map<Integer, DGNode> sparse;
+		private final int size;
+
+		NodeIdIndex(List<DGNode> nodes) {
+			size = nodes == null ? 0 : nodes.size();
+			dense = new DGNode[size + 1];
+			Map<Integer, DGNode> others = null;
+			if (nodes != null) {
+				for (DGNode node : nodes) {
+					if (!node.hasId())
+						continue;
+					int value = node.getId();
+					if (value >= 0 && value <= size) {
+						if (dense[value] == null)
+							dense[value] = node;
+					} else {
+						if (others == null)
+							others = new HashMap<Integer, DGNode>();
+						if (!others.containsKey(value))
+							others.put(value, node);
+					}
+				}
+			}
+			sparse = others;
+		}
+
+		DGNode get(int id) {
+			if (id >= 0 && id < dense.length)
+				return dense[id];
+			if (sparse == null)
+				return null;
+			return sparse.get(id);
+		}
+	}
 }
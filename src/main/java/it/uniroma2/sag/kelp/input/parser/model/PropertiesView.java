@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.parser.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Map<String, Object> view over an object that stores its standard
+ * properties in typed fields and any other property in an extension map.
+ * <p>
+ * A standard key whose value does not fit the typed field (e.g. a String
+ * stored under "start") is kept in the extension map, so that the view behaves
+ * exactly as a HashMap from the point of view of the caller.
+ */
+abstract class PropertiesView extends AbstractMap<String, Object> {
+
+	/**
+	 * @return the standard keys, i.e. the ones backed by typed fields.
+	 */
+	protected abstract String[] standardKeys();
+
+	/**
+	 * @return the value of the standard property in the given slot, or null if
+	 *         it is not set.
+	 */
+	protected abstract Object getStandard(int slot);
+
+	/**
+	 * Stores a value in the typed field of the given slot.
+	 *
+	 * @return false if the value cannot be stored in the typed field.
+	 */
+	protected abstract boolean setStandard(int slot, Object value);
+
+	/**
+	 * Unsets the typed field of the given slot.
+	 */
+	protected abstract void clearStandard(int slot);
+
+	/**
+	 * @param create
+	 *            whether the extension map must be created if missing.
+	 * @return the map containing the non standard properties (may be null if
+	 *         create is false).
+	 */
+	protected abstract Map<String, Object> extension(boolean create);
+
+	/**
+	 * @return true if the underlying object cannot be modified anymore.
+	 */
+	protected abstract boolean isFrozen();
+
+	private void checkNotFrozen() {
+		if (isFrozen())
+			throw new UnsupportedOperationException("The properties are frozen");
+	}
+
+	private int slotOf(Object key) {
+		String[] keys = standardKeys();
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i].equals(key))
+				return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public Object get(Object key) {
+		int slot = slotOf(key);
+		if (slot >= 0) {
+			Object value = getStandard(slot);
+			if (value != null)
+				return value;
+		}
+		Map<String, Object> ext = extension(false);
+		return ext == null ? null : ext.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		int slot = slotOf(key);
+		if (slot >= 0 && getStandard(slot) != null)
+			return true;
+		Map<String, Object> ext = extension(false);
+		return ext != null && ext.containsKey(key);
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		checkNotFrozen();
+		Object old = get(key);
+		int slot = slotOf(key);
+		if (slot >= 0 && setStandard(slot, value)) {
+			Map<String, Object> ext = extension(false);
+			if (ext != null)
+				ext.remove(key);
+		} else {
+			if (slot >= 0)
+				clearStandard(slot);
+			extension(true).put(key, value);
+		}
+		return old;
+	}
+
+	@Override
+	public Object remove(Object key) {
+		checkNotFrozen();
+		Object old = get(key);
+		int slot = slotOf(key);
+		if (slot >= 0)
+			clearStandard(slot);
+		Map<String, Object> ext = extension(false);
+		if (ext != null)
+			ext.remove(key);
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		checkNotFrozen();
+		String[] keys = standardKeys();
+		for (int i = 0; i < keys.length; i++)
+			clearStandard(i);
+		Map<String, Object> ext = extension(false);
+		if (ext != null)
+			ext.clear();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Object>>() {
+			@Override
+			public Iterator<Map.Entry<String, Object>> iterator() {
+				return new EntryIterator(keySnapshot());
+			}
+
+			@Override
+			public int size() {
+				int size = 0;
+				String[] keys = standardKeys();
+				for (int i = 0; i < keys.length; i++) {
+					if (getStandard(i) != null)
+						size++;
+				}
+				Map<String, Object> ext = extension(false);
+				if (ext != null) {
+					for (String key : ext.keySet()) {
+						if (!isShadowed(key))
+							size++;
+					}
+				}
+				return size;
+			}
+		};
+	}
+
+	private List<String> keySnapshot() {
+		List<String> snapshot = new ArrayList<String>();
+		String[] keys = standardKeys();
+		for (int i = 0; i < keys.length; i++) {
+			if (getStandard(i) != null)
+				snapshot.add(keys[i]);
+		}
+		Map<String, Object> ext = extension(false);
+		if (ext != null) {
+			for (String key : ext.keySet()) {
+				if (!isShadowed(key))
+					snapshot.add(key);
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * A standard key can be left in the extension map when a typed setter is
+	 * used after storing a non conforming value: the typed field wins.
+	 */
+	private boolean isShadowed(String key) {
+		int slot = slotOf(key);
+		return slot >= 0 && getStandard(slot) != null;
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+		private final List<String> keys;
+		private int next;
+		private String last;
+
+		EntryIterator(List<String> keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < keys.size();
+		}
+
+		@Override
+		public Map.Entry<String, Object> next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			last = keys.get(next++);
+			final String key = last;
+			return new AbstractMap.SimpleEntry<String, Object>(key, get(key)) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public Object setValue(Object value) {
+					super.setValue(value);
+					return put(key, value);
+				}
+			};
+		}
+
+		@Override
+		public void remove() {
+			if (last == null)
+				throw new IllegalStateException();
+			PropertiesView.this.remove(last);
+			last = null;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.parser.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An append-only, thread-safe table mapping labels (e.g. lemmas, parts of
+ * speech, relation types) to dense int ids and back. Interning the labels of
+ * a corpus in a table makes identical labels share a single String instance,
+ * and allows to compare them through their ids.
+ * <p>
+ * A table never forgets a symbol, so it should be owned by something whose
+ * vocabulary is bounded or that is eventually discarded, e.g. a corpus, rather
+ * than kept for the whole life of a process that reads open-ended text.
+ * <p>
+ * Lookups are lock free; only the insertion of a new symbol is synchronized.
+ */
+public class SymbolTable {
+	/**
+	 * Id returned by {@link #getId(String)} for a symbol not in the table.
+	 */
+	public static final int NO_ID = -1;
+
+	private final ConcurrentHashMap<String, Integer> ids;
+	// a symbol is stored in the array before its id is published in the map
+	// and in size, so readers always find it in the current array
+	private volatile String[] symbols;
+	private volatile int size;
+
+	public SymbolTable() {
+		ids = new ConcurrentHashMap<String, Integer>();
+		symbols = new String[64];
+	}
+
+	/**
+	 * Adds a symbol to the table, if not already present.
+	 *
+	 * @param symbol
+	 *            the symbol to be added.
+	 * @return the id of the symbol.
+	 */
+	public int add(String symbol) {
+		Integer id = ids.get(symbol);
+		if (id != null)
+			return id;
+		synchronized (this) {
+			id = ids.get(symbol);
+			if (id != null)
+				return id;
+			int newId = size;
+			if (newId == symbols.length)
+				symbols = Arrays.copyOf(symbols, newId * 2);
+			symbols[newId] = symbol;
+			size = newId + 1;
+			ids.put(symbol, newId);
+			return newId;
+		}
+	}
+
+	/**
+	 * Returns the instance of a symbol stored in the table, adding the symbol
+	 * if not already present.
+	 *
+	 * @param symbol
+	 *            the symbol to be interned (may be null).
+	 * @return the canonical instance of the symbol, or null if the symbol is
+	 *         null.
+	 */
+	public String intern(String symbol) {
+		if (symbol == null)
+			return null;
+		// the array must be read after add, which may replace it
+		int id = add(symbol);
+		return symbols[id];
+	}
+
+	/**
+	 * @param symbol
+	 *            the symbol to search for.
+	 * @return the id of the symbol, or {@link #NO_ID} if it is not in the
+	 *         table.
+	 */
+	public int getId(String symbol) {
+		Integer id = ids.get(symbol);
+		return id == null ? NO_ID : id;
+	}
+
+	/**
+	 * @param id
+	 *            the id of a symbol.
+	 * @return the symbol associated to the id.
+	 */
+	public String getSymbol(int id) {
+		if (id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("Symbol " + id + ", size " + size);
+		return symbols[id];
+	}
+
+	/**
+	 * @return the number of symbols in the table.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.pipeline;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+/**
+ * Builds the KeLP example of a parsed sentence, in the generation stage of an
+ * {@link ExamplePipeline}. Implementations are invoked concurrently by the
+ * generation workers, so they must be thread-safe.
+ */
+public interface ExampleGenerator {
+	/**
+	 * Method to build the example of a sentence.
+	 * 
+	 * @param sentence The sentence.
+	 * @param graph The dependency graph of the sentence.
+	 * @return the example of the sentence, or null if the sentence must be
+	 * discarded.
+	 */
+	public Example generate(String sentence, DependencyGraph graph);
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.pipeline;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+/**
+ * A streaming pipeline turning sentences into KeLP examples through four
+ * stages: a reader consuming the input sentences, a pool of parse workers
+ * invoking a {@link DependencyParser}, a pool of generation workers invoking
+ * an {@link ExampleGenerator}, and the serializer, i.e. the thread calling
+ * {@link #run(Iterator, ExampleSink)}, which hands the examples to an
+ * {@link ExampleSink} in the same order as the sentences.
+ * <p>
+ * The stages are connected by bounded queues, and at most
+ * {@link #getMaxInFlight()} sentences are admitted at the same time, including
+ * the ones waiting to be reordered: a slow stage blocks the previous ones, so
+ * the memory used by the pipeline does not depend on the size of the input.
+ * <p>
+ * When more than one parse worker is used, the parser must support concurrent
+ * invocations of {@link DependencyParser#parse(String)}, as
+ * {@link it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper} does.
+ * Sentences whose graph or example is null are dropped.
+ */
+public class ExamplePipeline {
+	private final DependencyParser parser;
+	private final ExampleGenerator generator;
+	private int parseThreads = Runtime.getRuntime().availableProcessors();
+	private int generationThreads = 1;
+	private int maxInFlight = 1024;
+
+	/**
+	 * A sentence travelling through the pipeline.
+	 */
+	private static class Item {
+		private final long index;
+		private final String sentence;
+		private DependencyGraph graph;
+		private Example example;
+		private Throwable error;
+
+		Item(long index, String sentence) {
+			this.index = index;
+			this.sentence = sentence;
+		}
+	}
+
+	// signals the end of the input of a stage
+	private static final Item END = new Item(-1, null);
+
+	/**
+	 * @param parser
+	 *            the parser of the sentences, already initialized.
+	 * @param generator
+	 *            the generator of the examples.
+	 */
+	public ExamplePipeline(DependencyParser parser, ExampleGenerator generator) {
+		this.parser = parser;
+		this.generator = generator;
+	}
+
+	/**
+	 * @return the number of parse workers.
+	 */
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * Set the number of parse workers. By default one worker per available
+	 * processor is used.
+	 *
+	 * @param parseThreads
+	 */
+	public void setParseThreads(int parseThreads) {
+		if (parseThreads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * @return the number of generation workers.
+	 */
+	public int getGenerationThreads() {
+		return generationThreads;
+	}
+
+	/**
+	 * Set the number of generation workers. By default a single worker is used.
+	 *
+	 * @param generationThreads
+	 */
+	public void setGenerationThreads(int generationThreads) {
+		if (generationThreads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+		this.generationThreads = generationThreads;
+	}
+
+	/**
+	 * @return the maximum number of sentences in the pipeline at the same
+	 *         time.
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Set the maximum number of sentences in the pipeline at the same time,
+	 * which also bounds the capacity of the queues between the stages.
+	 *
+	 * @param maxInFlight
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		if (maxInFlight < 1)
+			throw new IllegalArgumentException("The number of sentences must be positive");
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Processes all the sentences, blocking until the last example has been
+	 * written to the sink. If a stage fails, the pipeline is stopped and the
+	 * error is rethrown, wrapped in an IllegalStateException if it is not a
+	 * RuntimeException.
+	 *
+	 * @param sentences
+	 *            the sentences to be processed.
+	 * @param sink
+	 *            the consumer of the examples.
+	 * @return the number of examples written to the sink.
+	 * @throws IOException
+	 *             if the sink fails.
+	 */
+	public long run(final Iterator<String> sentences, ExampleSink sink) throws IOException {
+		final BlockingQueue<Item> parseQueue = new ArrayBlockingQueue<Item>(maxInFlight);
+		final BlockingQueue<Item> generationQueue = new ArrayBlockingQueue<Item>(maxInFlight);
+		final BlockingQueue<Item> sinkQueue = new ArrayBlockingQueue<Item>(maxInFlight);
+		final Semaphore inFlight = new Semaphore(maxInFlight);
+		final int parsers = parseThreads;
+		final int generators = generationThreads;
+		final AtomicInteger liveParsers = new AtomicInteger(parsers);
+		final AtomicInteger liveGenerators = new AtomicInteger(generators);
+
+		ExecutorService workers = Executors.newFixedThreadPool(1 + parsers + generators, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ExamplePipeline-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					long index = 0;
+					try {
+						try {
+							while (sentences.hasNext()) {
+								String sentence = sentences.next();
+								inFlight.acquire();
+								parseQueue.put(new Item(index++, sentence));
+							}
+						} catch (Throwable t) {
+							// forwarded in order, as the failures of the other stages
+							Item failure = new Item(index, null);
+							failure.error = t;
+							inFlight.acquire();
+							parseQueue.put(failure);
+						}
+						for (int i = 0; i < parsers; i++)
+							parseQueue.put(END);
+					} catch (InterruptedException e) {
+						// the pipeline has been stopped
+					}
+				}
+			});
+			for (int i = 0; i < parsers; i++) {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for (Item item = parseQueue.take(); item != END; item = parseQueue.take()) {
+								if (item.error == null) {
+									try {
+										item.graph = parser.parse(item.sentence);
+									} catch (Throwable t) {
+										item.error = t;
+									}
+								}
+								generationQueue.put(item);
+							}
+							if (liveParsers.decrementAndGet() == 0) {
+								for (int j = 0; j < generators; j++)
+									generationQueue.put(END);
+							}
+						} catch (InterruptedException e) {
+							// the pipeline has been stopped
+						}
+					}
+				});
+			}
+			for (int i = 0; i < generators; i++) {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for (Item item = generationQueue.take(); item != END; item = generationQueue.take()) {
+								if (item.error == null && item.graph != null) {
+									try {
+										item.example = generator.generate(item.sentence, item.graph);
+									} catch (Throwable t) {
+										item.error = t;
+									}
+								}
+								// the graph is not needed anymore
+								item.graph = null;
+								sinkQueue.put(item);
+							}
+							if (liveGenerators.decrementAndGet() == 0)
+								sinkQueue.put(END);
+						} catch (InterruptedException e) {
+							// the pipeline has been stopped
+						}
+					}
+				});
+			}
+
+			// the serializer: restores the order of the input sentences
+			Map<Long, Item> pending = new HashMap<Long, Item>();
+			long next = 0;
+			long written = 0;
+			for (Item item = sinkQueue.take(); item != END; item = sinkQueue.take()) {
+				pending.put(item.index, item);
+				for (Item ready = pending.remove(next); ready != null; ready = pending.remove(next)) {
+					if (ready.error != null)
+						throw failure(ready.error);
+					if (ready.example != null) {
+						sink.write(ready.example);
+						written++;
+					}
+					next++;
+					inFlight.release();
+				}
+			}
+			return written;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running the pipeline", e);
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	private static RuntimeException failure(Throwable error) {
+		if (error instanceof RuntimeException)
+			return (RuntimeException) error;
+		if (error instanceof Error)
+			throw (Error) error;
+		return new IllegalStateException("Error while running the pipeline", error);
+	}
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.pipeline;
+
+import java.io.IOException;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * Receives the examples produced by an {@link ExamplePipeline}, in the same
+ * order as the input sentences. It is always invoked by a single thread.
+ */
+public interface ExampleSink {
+	/**
+	 * Method to consume an example.
+	 * 
+	 * @param example The example.
+	 * @throws IOException
+	 */
+	public void write(Example example) throws IOException;
+}
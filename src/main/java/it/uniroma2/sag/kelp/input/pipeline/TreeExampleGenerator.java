@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.pipeline;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeFormat;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+/**
+ * An ExampleGenerator attaching tree representations of the dependency graph
+ * to a SimpleExample, under the names of their formats (see
+ * {@link TreeFormat#getName()}). By default the GRCT, LCT, CGRCT and CLCT
+ * representations are attached, under the names "grct", "lct", "cgrct" and
+ * "clct", as in
+ * {@link it.uniroma2.sag.kelp.input.main.TreeRepresentationGeneratorMain}. The
+ * representations are generated in a single visit of the graph (see
+ * {@link TreeRepresentationGenerator#generate}).
+ */
+public class TreeExampleGenerator implements ExampleGenerator {
+	private final SyntElementLabelGenerator rg;
+	private final LexicalElementLabelGenerator ng;
+	private final PosElementLabelGenerator ig;
+	private final Set<TreeFormat> formats;
+
+	/**
+	 * The formats written by
+	 * {@link it.uniroma2.sag.kelp.input.main.TreeRepresentationGeneratorMain}.
+	 */
+	public static final Set<TreeFormat> DEFAULT_FORMATS = Collections
+			.unmodifiableSet(EnumSet.of(TreeFormat.GRCT, TreeFormat.LCT, TreeFormat.CGRCT, TreeFormat.CLCT));
+
+	/**
+	 * Creates a generator of the {@link #DEFAULT_FORMATS}.
+	 * 
+	 * @param rg
+	 *            the label generator of the syntactic nodes.
+	 * @param ng
+	 *            the label generator of the lexical nodes.
+	 * @param ig
+	 *            the label generator of the part-of-speech nodes.
+	 */
+	public TreeExampleGenerator(SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
+			PosElementLabelGenerator ig) {
+		this(rg, ng, ig, DEFAULT_FORMATS);
+	}
+
+	/**
+	 * @param rg
+	 *            the label generator of the syntactic nodes.
+	 * @param ng
+	 *            the label generator of the lexical nodes.
+	 * @param ig
+	 *            the label generator of the part-of-speech nodes.
+	 * @param formats
+	 *            the formats of the representations to be attached.
+	 */
+	public TreeExampleGenerator(SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
+			PosElementLabelGenerator ig, Set<TreeFormat> formats) {
+		this.rg = rg;
+		this.ng = ng;
+		this.ig = ig;
+		this.formats = EnumSet.copyOf(formats);
+	}
+
+	@Override
+	public Example generate(String sentence, DependencyGraph graph) {
+		Example e = new SimpleExample();
+		Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(graph, formats, rg,
+				ng, ig);
+		for (Map.Entry<TreeFormat, TreeRepresentation> representation : representations.entrySet())
+			e.addRepresentation(representation.getKey().getName(), representation.getValue());
+		return e;
+	}
+}
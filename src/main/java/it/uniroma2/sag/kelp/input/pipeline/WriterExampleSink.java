@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.uniroma2.sag.kelp.input.pipeline;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+
+/**
+ * An ExampleSink writing every example in the KeLP textual format, one example
+ * per line.
+ */
+public class WriterExampleSink implements ExampleSink, Closeable {
+	private final Writer out;
+
+	/**
+	 * @param out
+	 *            the stream where the examples are written, which is buffered
+	 *            if needed.
+	 */
+	public WriterExampleSink(Writer out) {
+		this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+	}
+
+	@Override
+	public void write(Example example) throws IOException {
+		out.write(example.toString());
+		out.write('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
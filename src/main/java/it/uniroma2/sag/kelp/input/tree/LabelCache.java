@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.tree;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+/**
+ * The labels produced by a triple of label generators for the nodes and the
+ * relations of a dependency graph, computed at most once and stored in arrays
+ * indexed by node id. The cache of a frozen graph is stored in the graph
+ * itself (see {@link DependencyGraph#cacheValue(Object, Object)}), so it is
+ * shared by all the invocations on the graph, and it can be used by many
+ * threads at the same time. A graph stores only the cache of the last
+ * generators used on it, so that the memory it holds does not grow with the
+ * number of generators. A mutable graph can be modified in place, so its
+ * cache is not stored and lasts for a single invocation.
+ * <p>
+ * Nodes whose id is not in [0, n], where n is the number of nodes, are not
+ * cached, and neither are the relations other than the first one reaching
+ * each node.
+ */
+final class LabelCache {
+	private final DependencyGraph g;
+	private final SyntElementLabelGenerator rg;
+	private final LexicalElementLabelGenerator ng;
+	private final PosElementLabelGenerator ig;
+	// the node of each id, to check that a node belongs to the graph
+	private final DGNode[] nodes;
+	private final String[] lemmas;
+	private final String[] lexicalPos;
+	private final String[] pos;
+	private final RelationLabel[] relations;
+
+	/**
+	 * The label of a relation, by the id of its target.
+	 */
+	private static final class RelationLabel {
+		private final DGRelation relation;
+		private final String label;
+
+		RelationLabel(DGRelation relation, String label) {
+			this.relation = relation;
+			this.label = label;
+		}
+	}
+
+	/**
+	 * The key of the slot holding the cache of a frozen graph.
+	 */
+	private static final Object KEY = new Object();
+
+	private LabelCache(DependencyGraph g, SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
+			PosElementLabelGenerator ig) {
+		this.g = g;
+		this.rg = rg;
+		this.ng = ng;
+		this.ig = ig;
+		List<DGNode> graphNodes = g.getNodes();
+		int n = graphNodes == null ? 0 : graphNodes.size();
+		nodes = new DGNode[n + 1];
+		if (graphNodes != null) {
+			for (DGNode node : graphNodes) {
+				int id = node.getId();
+				if (id >= 0 && id <= n)
+					nodes[id] = node;
+			}
+		}
+		lemmas = new String[n + 1];
+		lexicalPos = new String[n + 1];
+		pos = new String[n + 1];
+		relations = new RelationLabel[n + 1];
+	}
+
+	/**
+	 * Returns the cache of the labels of a graph: the one stored in the graph
+	 * if the graph is frozen, replaced if it was created for other generators,
+	 * or a new one otherwise.
+	 *
+	 * @param g
+	 *            the dependency graph.
+	 * @param rg
+	 *            the label generator for SyntacticStructureElement, or null.
+	 * @param ng
+	 *            the label generator for LexicalStructureElement.
+	 * @param ig
+	 *            the label generator for PosStructureElement, or null.
+	 * @return the cache of the labels.
+	 */
+	static LabelCache of(DependencyGraph g, SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
+			PosElementLabelGenerator ig) {
+		if (!g.isFrozen())
+			return new LabelCache(g, rg, ng, ig);
+		@SuppressWarnings("unchecked")
+		AtomicReference<LabelCache> slot = (AtomicReference<LabelCache>) g.getCachedValue(KEY);
+		if (slot == null)
+			slot = (AtomicReference<LabelCache>) g.cacheValue(KEY, new AtomicReference<LabelCache>());
+		// the generators are compared by identity
+		LabelCache cache = slot.get();
+		if (cache == null || cache.rg != rg || cache.ng != ng || cache.ig != ig) {
+			cache = new LabelCache(g, rg, ng, ig);
+			slot.set(cache);
+		}
+		return cache;
+	}
+
+	private int indexOf(DGNode node) {
+		int id = node.getId();
+		return id >= 0 && id < nodes.length && nodes[id] == node ? id : -1;
+	}
+
+	/**
+	 * @return the lemma label of a node, see
+	 *         {@link LexicalElementLabelGenerator#getLemmaLabelOf(DGNode, DependencyGraph)}.
+	 */
+	String getLemmaLabelOf(DGNode node) {
+		int i = indexOf(node);
+		if (i < 0)
+			return ng.getLemmaLabelOf(node, g);
+		String label = lemmas[i];
+		if (label == null) {
+			label = ng.getLemmaLabelOf(node, g);
+			lemmas[i] = label;
+		}
+		return label;
+	}
+
+	/**
+	 * @return the part-of-speech label of the lexical element of a node, see
+	 *         {@link LexicalElementLabelGenerator#getPosLabelOf(DGNode, DependencyGraph)}.
+	 */
+	String getLexicalPosLabelOf(DGNode node) {
+		int i = indexOf(node);
+		if (i < 0)
+			return ng.getPosLabelOf(node, g);
+		String label = lexicalPos[i];
+		if (label == null) {
+			label = ng.getPosLabelOf(node, g);
+			lexicalPos[i] = label;
+		}
+		return label;
+	}
+
+	/**
+	 * @return the label of the part-of-speech element of a node, see
+	 *         {@link PosElementLabelGenerator#getPosLabelOf(DGNode, DependencyGraph)}.
+	 */
+	String getPosLabelOf(DGNode node) {
+		int i = indexOf(node);
+		if (i < 0)
+			return ig.getPosLabelOf(node, g);
+		String label = pos[i];
+		if (label == null) {
+			label = ig.getPosLabelOf(node, g);
+			pos[i] = label;
+		}
+		return label;
+	}
+
+	/**
+	 * @return the label of a relation, see
+	 *         {@link SyntElementLabelGenerator#getLabelOf(DGRelation, DependencyGraph)}.
+	 */
+	String getLabelOf(DGRelation relation) {
+		int i = relation.getTarget() == null ? -1 : indexOf(relation.getTarget());
+		if (i < 0)
+			return rg.getLabelOf(relation, g);
+		RelationLabel cached = relations[i];
+		if (cached != null && cached.relation == relation)
+			return cached.label;
+		String label = rg.getLabelOf(relation, g);
+		if (cached == null && label != null)
+			relations[i] = new RelationLabel(relation, label);
+		return label;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.tree;
+
+/**
+ * The tree representations of a dependency graph produced by
+ * {@link TreeRepresentationGenerator}.
+ */
+public enum TreeFormat {
+	/**
+	 * Grammatical Relation Centered Tree.
+	 */
+	GRCT("grct"),
+	/**
+	 * Lexical Centered Tree.
+	 */
+	LCT("lct"),
+	/**
+	 * Lexical Only Centered Tree.
+	 */
+	LOCT("loct"),
+	/**
+	 * Compositional Grammatical Relation Centered Tree.
+	 */
+	CGRCT("cgrct"),
+	/**
+	 * Compositional Lexical Centered Tree.
+	 */
+	CLCT("clct");
+
+	private final String name;
+
+	private TreeFormat(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name of the representation, e.g. in a KeLP example.
+	 */
+	public String getName() {
+		return name;
+	}
+}
@@ -15,14 +15,25 @@
 
 package it.uniroma2.sag.kelp.input.tree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import it.uniroma2.sag.kelp.data.representation.structure.CompositionalStructureElement;
 import it.uniroma2.sag.kelp.data.representation.structure.LexicalStructureElement;
 import it.uniroma2.sag.kelp.data.representation.structure.PosStructureElement;
+import it.uniroma2.sag.kelp.data.representation.structure.StructureElement;
 import it.uniroma2.sag.kelp.data.representation.structure.SyntacticStructureElement;
 import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
 import it.uniroma2.sag.kelp.data.representation.tree.node.TreeNode;
+import it.uniroma2.sag.kelp.input.parser.model.ConstituencyNode;
 import it.uniroma2.sag.kelp.input.parser.model.DGNode;
 import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
 import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
@@ -31,7 +42,73 @@ import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
 import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
 
 public class TreeRepresentationGenerator {
-	
+
+	/**
+	 * Method that transform a DependencyGraph in several KeLP objects
+	 * TreeRepresentation at once, e.g. to attach all of them to the same
+	 * example. The graph is visited only once, and the labels of every node
+	 * are computed once and shared by all the representations.
+	 * <p>
+	 * If the graph is frozen (see {@link DependencyGraph#freeze()}), the labels
+	 * are also cached in the graph, for the given label generators, and reused
+	 * by the later invocations on the same graph.
+	 * <p>
+	 * The nodes of every representation are numbered from 1 to the number of
+	 * nodes in pre-order, as by all the generators of this class, and the
+	 * father of every node is its parent in the tree. The number of nodes can
+	 * thus be read from the ids (see {@link #getNumberOfNodes(TreeNode)}).
+	 * <p>
+	 * The GRCT and the CGRCT do not contain the subtree of a node depending on
+	 * itself, and are null if that node is the root.
+	 * 
+	 * @param g
+	 *            the dependency graph to be transformed.
+	 * @param formats
+	 *            the representations to be generated.
+	 * @param rg
+	 *            the label generator for SyntacticStructureElement.
+	 * @param ng
+	 *            the label generator for LexicalStructureElement.
+	 * @param ig
+	 *            the label generator for PosStructureElement.
+	 * 
+	 * @return the requested representations, by format.
+	 * @throws IllegalArgumentException
+	 *             if the dependency graph contains a cycle.
+	 */
+	public static Map<TreeFormat, TreeRepresentation> generate(DependencyGraph g, Set<TreeFormat> formats,
+			SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
+		Map<TreeFormat, TreeRepresentation> representations = new EnumMap<TreeFormat, TreeRepresentation>(
+				TreeFormat.class);
+		if (formats.isEmpty())
+			return representations;
+		TreeNode[] trees = new Traversal(g, formats, rg, ng, ig).run();
+		for (TreeFormat format : formats)
+			representations.put(format, new TreeRepresentation(trees[format.ordinal()]));
+		return representations;
+	}
+
+	/**
+	 * Returns the number of nodes of a tree built by this class, i.e. the id
+	 * of its last node in pre-order, which is reached by following the last
+	 * child of every node from the root, without visiting the whole tree.
+	 * 
+	 * @param root
+	 *            the root of the tree.
+	 * @return the number of nodes of the tree.
+	 */
+	public static int getNumberOfNodes(TreeNode root) {
+		TreeNode node = root;
+		while (node.getChildren() != null && !node.getChildren().isEmpty())
+			node = node.getChildren().get(node.getChildren().size() - 1);
+		return node.getId() - root.getId() + 1;
+	}
+
+	private static TreeRepresentation generate(DependencyGraph g, TreeFormat format, SyntElementLabelGenerator rg,
+			LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
+		return generate(g, EnumSet.of(format), rg, ng, ig).get(format);
+	}
+
 	/**
 	 * Method that transform a DependencyGraph in a KeLP object
 	 * TreeRepresentation modeling a Compositional LCT Tree.
@@ -49,55 +126,9 @@ public class TreeRepresentationGenerator {
 	 */
 	public static TreeRepresentation clctGenerator(DependencyGraph g, SyntElementLabelGenerator rg,
 			LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
-		DGNode target = g.getRoot().getTarget();
-		int id = 1;
-		TreeNode targetKelp = getKelpNode(id, target, null, rg, ng, g);
-		TreeNode res = generateCompositionalLctRepresentation(target, targetKelp, g.getRoot(), g, rg, ng, ig, id++);
-		TreeRepresentation representation = new TreeRepresentation(res);
-		return representation;
+		return generate(g, TreeFormat.CLCT, rg, ng, ig);
 	}
 
-	private static TreeNode generateCompositionalLctRepresentation(DGNode target, TreeNode targetKelpNode, DGRelation r,
-			DependencyGraph g, SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
-			PosElementLabelGenerator ig, int id) {
-		String dependencyRelation = rg.getLabelOf(r, g);
-		ArrayList<TreeNode> children = new ArrayList<TreeNode>();
-
-		for (DGRelation relation : g.getRelationsWithSource(target)) {
-			DGNode childNode = relation.getTarget();
-			TreeNode childNoneKelp = getKelpNode(id++, childNode, targetKelpNode, rg, ng, g);
-			children.add(generateCompositionalLctRepresentation(childNode, childNoneKelp, relation, g, rg, ng, ig, id));
-		}
-		children.add(new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)), targetKelpNode));
-		children.add(new TreeNode(id++, new SyntacticStructureElement(rg.getLabelOf(r, g)), targetKelpNode));
-		children.add(new TreeNode(id++,
-				new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)),
-				targetKelpNode));
-
-		DGNode headNode = r.getSource();
-		DGNode modifierNode = r.getTarget();
-
-		LexicalStructureElement headLex = null;
-		if (headNode != null) {
-			headLex = new LexicalStructureElement(ng.getLemmaLabelOf(headNode, g), ng.getPosLabelOf(headNode, g));
-		} else
-			headLex = new LexicalStructureElement("*", "*");
-
-		LexicalStructureElement targetLex = new LexicalStructureElement(ng.getLemmaLabelOf(modifierNode, g),
-				ng.getPosLabelOf(modifierNode, g));
-
-		CompositionalStructureElement compositionalStructureElement = new CompositionalStructureElement(
-				dependencyRelation, headLex, targetLex);
-
-		TreeNode root = new TreeNode(id++, compositionalStructureElement, targetKelpNode);
-		root.setChildren(children);
-
-
-		return root;
-	}
-
-	
-	
 	/**
 	 * Method that transform a DependencyGraph in a KeLP object TreeRepresentation modeling a Compositional 
 	 * GRCT Tree.
@@ -111,90 +142,9 @@ public class TreeRepresentationGenerator {
 	 */
 	public static TreeRepresentation cgrctGenerator(DependencyGraph g, SyntElementLabelGenerator rg,
 			LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
-		DGNode target = g.getRoot().getTarget();
-		int id = 1;
-		TreeNode targetKelp = getKelpNode(id, target, null, rg, ng, g);
-		TreeNode res = generateCompositionalGrctRepresentation(target, targetKelp, g.getRoot(), g, rg, ng, ig, id++);
-		TreeRepresentation representation = new TreeRepresentation(res);
-		return representation; 
+		return generate(g, TreeFormat.CGRCT, rg, ng, ig);
 	}
-	
-
-	private static TreeNode generateCompositionalGrctRepresentation(DGNode target, TreeNode targetKelpNode,
-			DGRelation r, DependencyGraph g, SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
-			PosElementLabelGenerator ig, int id) {
-		ArrayList<TreeNode> rootChildren = new ArrayList<TreeNode>();
-		if (g.getRelationsWithSource(target).isEmpty()) {
-			ArrayList<TreeNode> posChildren = new ArrayList<TreeNode>();
-			posChildren.add(new TreeNode(id++, new LexicalStructureElement(ng.getLemmaLabelOf(target, g),
-					ng.getPosLabelOf(target, g).substring(0, 1)), targetKelpNode));
-
-			TreeNode tmp = new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)), targetKelpNode);
-			tmp.setChildren(posChildren);
-			rootChildren.add(tmp);
-		} else {
-			boolean printedRootNode = false;
-
-			for (DGRelation relation : g.getRelationsWithSource(target)) {
-				DGNode childNode = relation.getTarget();
 
-				if (!printedRootNode && (Integer) childNode.getProperties().get("start") > (Integer) target
-						.getProperties().get("start")) {
-					ArrayList<TreeNode> posChildren = new ArrayList<TreeNode>();
-					posChildren.add(new TreeNode(id++,
-							new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)),
-							targetKelpNode));
-					TreeNode tmp = new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)),
-							targetKelpNode);
-					tmp.setChildren(posChildren);
-					rootChildren.add(tmp);
-
-					printedRootNode = true;
-
-				}
-				if (childNode.equals(target)) {
-					return null;
-				}
-
-				TreeNode childNoneKelp = getKelpNode(id++, childNode, targetKelpNode, rg, ng, g);
-				rootChildren.add(generateCompositionalGrctRepresentation(childNode, childNoneKelp, relation, g, rg, ng, ig, id));
-			}
-			if (!printedRootNode) {
-				// Print pos-lexical info
-				ArrayList<TreeNode> posChildren = new ArrayList<TreeNode>();
-				posChildren.add(new TreeNode(id++,
-						new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)),
-						targetKelpNode));
-				TreeNode tmp = new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)), targetKelpNode);
-				tmp.setChildren(posChildren);
-				rootChildren.add(tmp);
-			}
-		}
-
-		DGNode headNode = r.getSource();
-		DGNode modifierNode = r.getTarget();
-
-		LexicalStructureElement head = null;
-		if (headNode == null) {
-			head = new LexicalStructureElement("*", "*");
-		} else {
-			head = new LexicalStructureElement(ng.getLemmaLabelOf(headNode, g), ng.getPosLabelOf(headNode, g));
-		}
-
-		LexicalStructureElement modifier = new LexicalStructureElement(ng.getLemmaLabelOf(modifierNode, g),
-				ng.getPosLabelOf(modifierNode, g));
-
-		String dependencyRelation = rg.getLabelOf(r, g);
-
-		CompositionalStructureElement compositionalStructureElement = new CompositionalStructureElement(
-				dependencyRelation, head, modifier);
-
-		TreeNode root = new TreeNode(id++, compositionalStructureElement, targetKelpNode);
-		root.setChildren(rootChildren);
-		return root;
-	}
-	
-	
 	/**
 	 * Method that transform a DependencyGraph in a KeLP object TreeRepresentation modeling a GRCT Tree.
 	 * 
@@ -207,68 +157,7 @@ public class TreeRepresentationGenerator {
 	 */
 	public static TreeRepresentation grctGenerator(DependencyGraph g, SyntElementLabelGenerator rg,
 			LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
-		DGNode target = g.getRoot().getTarget();
-		int id = 1;
-		TreeNode targetKelp = getKelpNode(id, target, null, rg, ng, g);
-		TreeNode res = generateGrctRepresentation(target, targetKelp, g.getRoot(), g, rg, ng, ig, id++);
-		TreeRepresentation representation = new TreeRepresentation(res);
-		return representation;
-	}
-
-	private static TreeNode generateGrctRepresentation(DGNode target, TreeNode targetKelpNode, DGRelation r,
-			DependencyGraph g, SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
-			PosElementLabelGenerator ig, int id) {
-		ArrayList<TreeNode> rootChildren = new ArrayList<TreeNode>();
-		if (g.getRelationsWithSource(target).isEmpty()) {
-			ArrayList<TreeNode> posChildren = new ArrayList<TreeNode>();
-			posChildren.add(new TreeNode(id++, new LexicalStructureElement(ng.getLemmaLabelOf(target, g),
-					ng.getPosLabelOf(target, g).substring(0, 1)), targetKelpNode));
-
-			TreeNode tmp = new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)), targetKelpNode);
-			tmp.setChildren(posChildren);
-			rootChildren.add(tmp);
-		} else {
-			boolean printedRootNode = false;
-
-			for (DGRelation relation : g.getRelationsWithSource(target)) {
-				DGNode childNode = relation.getTarget();
-
-				if (!printedRootNode && (Integer) childNode.getProperties().get("start") > (Integer) target
-						.getProperties().get("start")) {
-					ArrayList<TreeNode> posChildren = new ArrayList<TreeNode>();
-					posChildren.add(new TreeNode(id++,
-							new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)),
-							targetKelpNode));
-					TreeNode tmp = new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)),
-							targetKelpNode);
-					tmp.setChildren(posChildren);
-					rootChildren.add(tmp);
-
-					printedRootNode = true;
-
-				}
-				if (childNode.equals(target)) {
-					return null;
-				}
-
-				TreeNode childNoneKelp = getKelpNode(id++, childNode, targetKelpNode, rg, ng, g);
-				rootChildren.add(generateGrctRepresentation(childNode, childNoneKelp, relation, g, rg, ng, ig, id));
-			}
-			if (!printedRootNode) {
-				// Print pos-lexical info
-				ArrayList<TreeNode> posChildren = new ArrayList<TreeNode>();
-				posChildren.add(new TreeNode(id++,
-						new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)),
-						targetKelpNode));
-				TreeNode tmp = new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)), targetKelpNode);
-				tmp.setChildren(posChildren);
-				rootChildren.add(tmp);
-			}
-		}
-
-		TreeNode root = new TreeNode(id++, new SyntacticStructureElement(rg.getLabelOf(r, g)), targetKelpNode);
-		root.setChildren(rootChildren);
-		return root;
+		return generate(g, TreeFormat.GRCT, rg, ng, ig);
 	}
 
 	/**
@@ -283,29 +172,7 @@ public class TreeRepresentationGenerator {
 	 */
 	public static TreeRepresentation loctGenerator(DependencyGraph g, SyntElementLabelGenerator rg,
 			LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
-		DGNode target = g.getRoot().getTarget();
-		int id = 1;
-		TreeNode targetKelp = getKelpNode(id, target, null, rg, ng, g);
-		TreeNode res = generateLoctRepresentation(target, targetKelp, g.getRoot(), g, rg, ng, ig, id++);
-		TreeRepresentation representation = new TreeRepresentation(res);
-		return representation;
-	}
-
-	private static TreeNode generateLoctRepresentation(DGNode target, TreeNode targetKelp, DGRelation root,
-			DependencyGraph g, SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
-			PosElementLabelGenerator ig, int id) {
-		ArrayList<TreeNode> children = new ArrayList<TreeNode>();
-		for (DGRelation relation : g.getRelationsWithSource(target)) {
-			DGNode child = relation.getTarget();
-			TreeNode childKelp = getKelpNode(id++, child, targetKelp, rg, ng, g);
-			children.add(generateLoctRepresentation(child, childKelp, relation, g, rg, ng, ig, id));
-		}
-
-		TreeNode rootNode = new TreeNode(id++,
-				new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)), targetKelp);
-		rootNode.setChildren(children);
-
-		return rootNode;
+		return generate(g, TreeFormat.LOCT, rg, ng, ig);
 	}
 
 	/**
@@ -320,34 +187,300 @@ public class TreeRepresentationGenerator {
 	 */
 	public static TreeRepresentation lctGenerator(DependencyGraph g, SyntElementLabelGenerator rg,
 			LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
-		DGNode target = g.getRoot().getTarget();
-		int id = 1;
-		TreeNode targetKelp = getKelpNode(id, target, null, rg, ng, g);
-		TreeNode res = generateLctRepresentation(target, targetKelp, g.getRoot(), g, rg, ng, ig, id++);
-		TreeRepresentation representation = new TreeRepresentation(res);
-		return representation;
+		return generate(g, TreeFormat.LCT, rg, ng, ig);
+	}
+
+	/**
+	 * Method that transform the constituency tree kept in a DependencyGraph
+	 * (see {@link DependencyGraph#getConstituencyTree()}) in a KeLP object
+	 * TreeRepresentation, e.g. for the SST or PTK kernels. Phrases are
+	 * SyntacticStructureElements, parts of speech are PosStructureElements and
+	 * words are LexicalStructureElements, labeled as in the other
+	 * representations.
+	 * 
+	 * @param g the dependency graph holding the constituency tree.
+	 * @param ng the label generator for LexicalStructureElement.
+	 * @param ig the label generator for PosStructureElement.
+	 * 
+	 * @return a TreeRepresentation, or null if the graph has no constituency
+	 *         tree.
+	 */
+	public static TreeRepresentation constituencyGenerator(DependencyGraph g, LexicalElementLabelGenerator ng,
+			PosElementLabelGenerator ig) {
+		ConstituencyNode tree = g.getConstituencyTree();
+		if (tree == null)
+			return null;
+		return new TreeRepresentation(
+				generateConstituencyRepresentation(tree, null, LabelCache.of(g, null, ng, ig), new int[] { 1 }));
 	}
 
-	private static TreeNode generateLctRepresentation(DGNode target, TreeNode targetKelp, DGRelation root,
-			DependencyGraph g, SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
-			PosElementLabelGenerator ig, int id) {
-		ArrayList<TreeNode> children = new ArrayList<TreeNode>();
-		for (DGRelation relation : g.getRelationsWithSource(target)) {
-			DGNode child = relation.getTarget();
-			TreeNode childKelp = getKelpNode(id++, child, targetKelp, rg, ng, g);
-			children.add(generateLctRepresentation(child, childKelp, relation, g, rg, ng, ig, id));
+	private static TreeNode generateConstituencyRepresentation(ConstituencyNode node, TreeNode father,
+			LabelCache labels, int[] id) {
+		DGNode token = node.getToken();
+		if (node.isLeaf()) {
+			if (token == null)
+				return new TreeNode(id[0]++, new LexicalStructureElement(node.getLabel(), ""), father);
+			return new TreeNode(id[0]++,
+					new LexicalStructureElement(labels.getLemmaLabelOf(token), labels.getLexicalPosLabelOf(token)),
+					father);
+		}
+		TreeNode kelpNode;
+		if (node.isPreterminal()) {
+			DGNode word = node.getChildren().get(0).getToken();
+			kelpNode = new TreeNode(id[0]++,
+					new PosStructureElement(word != null ? labels.getPosLabelOf(word) : node.getLabel()), father);
+		} else {
+			kelpNode = new TreeNode(id[0]++, new SyntacticStructureElement(node.getLabel()), father);
 		}
-		children.add(new TreeNode(id++, new PosStructureElement(ig.getPosLabelOf(target, g)), targetKelp));
-		children.add(new TreeNode(id++, new SyntacticStructureElement(rg.getLabelOf(root, g)), targetKelp));
-		TreeNode rootNode = new TreeNode(id++,
-				new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)), targetKelp);
-		rootNode.setChildren(children);
-		return rootNode;
+		ArrayList<TreeNode> children = new ArrayList<TreeNode>(node.getChildren().size());
+		for (ConstituencyNode child : node.getChildren())
+			children.add(generateConstituencyRepresentation(child, kelpNode, labels, id));
+		kelpNode.setChildren(children);
+		return kelpNode;
 	}
 
-	private static TreeNode getKelpNode(int id, DGNode target, TreeNode father, SyntElementLabelGenerator rg,
-			LexicalElementLabelGenerator ng, DependencyGraph g) {
-		return new TreeNode(id, new LexicalStructureElement(ng.getLemmaLabelOf(target, g), ng.getPosLabelOf(target, g)),
-				father);
+	// the head of the compositional node of the root
+	private static final LexicalStructureElement ROOT_HEAD = new LexicalStructureElement("*", "*");
+
+	/**
+	 * A visit of a dependency graph building the nodes of all the requested
+	 * representations of every dependency node at the same time. The visit
+	 * keeps its own stack of dependency nodes, so that its depth is not
+	 * bounded by the stack of the thread. The nodes of each representation are
+	 * numbered from 1 in pre-order: the root of the subtree of a dependency
+	 * node is created, with its id, when the dependency node is reached, and
+	 * the other nodes as soon as their position is known.
+	 */
+	private static final class Traversal {
+		static final TreeFormat[] FORMATS = TreeFormat.values();
+
+		private final DependencyGraph g;
+		private final LabelCache labels;
+		private final TreeFormat[] formats;
+		private final boolean grct;
+		private final boolean lct;
+		private final boolean loct;
+		private final boolean cgrct;
+		private final boolean clct;
+		// the next id, by format
+		private final int[] next = new int[FORMATS.length];
+
+		Traversal(DependencyGraph g, Set<TreeFormat> formats, SyntElementLabelGenerator rg,
+				LexicalElementLabelGenerator ng, PosElementLabelGenerator ig) {
+			this.g = g;
+			this.labels = LabelCache.of(g, rg, ng, ig);
+			this.formats = formats.toArray(new TreeFormat[formats.size()]);
+			this.grct = formats.contains(TreeFormat.GRCT);
+			this.lct = formats.contains(TreeFormat.LCT);
+			this.loct = formats.contains(TreeFormat.LOCT);
+			this.cgrct = formats.contains(TreeFormat.CGRCT);
+			this.clct = formats.contains(TreeFormat.CLCT);
+			Arrays.fill(next, 1);
+		}
+
+		/**
+		 * A dependency node being visited, with the nodes of its subtrees
+		 * built so far.
+		 */
+		private final class Frame {
+			private final DGNode target;
+			private final LexicalStructureElement lex;
+			private final PosStructureElement pos;
+			private final SyntacticStructureElement synt;
+			private final CompositionalStructureElement comp;
+			// the roots of the subtrees of the dependency node, by format
+			private final TreeNode[] roots = new TreeNode[FORMATS.length];
+			private final ArrayList<TreeNode>[] children;
+			private final List<DGRelation> childRelations;
+			private int childIndex;
+			private boolean printedRootNode;
+			// the GRCTs of a node depending on itself, and of its descendants,
+			// are dropped: they are not built and do not take any id
+			private final boolean grctDropped;
+
+			/**
+			 * @param target
+			 *            the dependency node.
+			 * @param r
+			 *            the relation whose target is the dependency node.
+			 * @param head
+			 *            the lexical element of the source of the relation.
+			 * @param fathers
+			 *            the roots of the subtrees of the source, by format.
+			 * @param fatherDropped
+			 *            whether the GRCTs of the source are dropped.
+			 */
+			@SuppressWarnings("unchecked")
+			Frame(DGNode target, DGRelation r, LexicalStructureElement head, TreeNode[] fathers,
+					boolean fatherDropped) {
+				this.target = target;
+				lex = new LexicalStructureElement(labels.getLemmaLabelOf(target), labels.getLexicalPosLabelOf(target));
+				if (grct || lct || cgrct || clct) {
+					pos = new PosStructureElement(labels.getPosLabelOf(target));
+					String relation = labels.getLabelOf(r);
+					synt = new SyntacticStructureElement(relation);
+					comp = cgrct || clct ? new CompositionalStructureElement(relation, head, lex) : null;
+				} else {
+					pos = null;
+					synt = null;
+					comp = null;
+				}
+				childRelations = g.getRelationsWithSource(target);
+				grctDropped = fatherDropped || dependsOnItself();
+				int k = childRelations.size();
+				children = new ArrayList[FORMATS.length];
+				for (TreeFormat format : formats) {
+					if (grctDropped && (format == TreeFormat.GRCT || format == TreeFormat.CGRCT))
+						continue;
+					int f = format.ordinal();
+					StructureElement element;
+					int size;
+					switch (format) {
+					case GRCT:
+						element = synt;
+						size = k + 1;
+						break;
+					case CGRCT:
+						element = comp;
+						size = k + 1;
+						break;
+					case LCT:
+						element = lex;
+						size = k + 2;
+						break;
+					case CLCT:
+						element = comp;
+						size = k + 3;
+						break;
+					default:
+						element = lex;
+						size = k;
+						break;
+					}
+					roots[f] = new TreeNode(next[f]++, element, fathers == null ? null : fathers[f]);
+					children[f] = new ArrayList<TreeNode>(size);
+				}
+			}
+
+			private boolean dependsOnItself() {
+				for (DGRelation relation : childRelations) {
+					if (relation.getTarget().equals(target))
+						return true;
+				}
+				return false;
+			}
+
+			/**
+			 * @return the frame of the next child to be visited, or null if
+			 *         all the children have been visited.
+			 */
+			Frame nextChild() {
+				while (childIndex < childRelations.size()) {
+					DGRelation relation = childRelations.get(childIndex++);
+					DGNode childNode = relation.getTarget();
+					if (!printedRootNode && childNode.getStart() > target.getStart()) {
+						addPreterminal(TreeFormat.GRCT, lex);
+						addPreterminal(TreeFormat.CGRCT, lex);
+						printedRootNode = true;
+					}
+					if (childNode.equals(target))
+						continue;
+					return new Frame(childNode, relation, lex, roots, grctDropped);
+				}
+				return null;
+			}
+
+			void addSubtrees(TreeNode[] subtrees) {
+				for (TreeFormat format : formats) {
+					int f = format.ordinal();
+					if (subtrees[f] != null)
+						children[f].add(subtrees[f]);
+				}
+			}
+
+			/**
+			 * @return the subtrees of the dependency node, by format.
+			 */
+			TreeNode[] complete() {
+				if (grct || cgrct) {
+					if (childRelations.isEmpty()) {
+						LexicalStructureElement leaf = new LexicalStructureElement(lex.getLemma(),
+								lex.getPos().substring(0, 1));
+						addPreterminal(TreeFormat.GRCT, leaf);
+						addPreterminal(TreeFormat.CGRCT, leaf);
+					} else if (!printedRootNode) {
+						addPreterminal(TreeFormat.GRCT, lex);
+						addPreterminal(TreeFormat.CGRCT, lex);
+					}
+				}
+				if (lct) {
+					addLeaf(TreeFormat.LCT, pos);
+					addLeaf(TreeFormat.LCT, synt);
+				}
+				if (clct) {
+					addLeaf(TreeFormat.CLCT, pos);
+					addLeaf(TreeFormat.CLCT, synt);
+					addLeaf(TreeFormat.CLCT, lex);
+				}
+				for (TreeFormat format : formats) {
+					int f = format.ordinal();
+					if (roots[f] != null)
+						roots[f].setChildren(children[f]);
+				}
+				return roots;
+			}
+
+			/**
+			 * Adds a part-of-speech node, with its lexical child, to the
+			 * children of a GRCT node, if the format has been requested.
+			 */
+			private void addPreterminal(TreeFormat format, LexicalStructureElement leaf) {
+				int f = format.ordinal();
+				if (children[f] == null)
+					return;
+				TreeNode posNode = new TreeNode(next[f]++, pos, roots[f]);
+				ArrayList<TreeNode> posChildren = new ArrayList<TreeNode>(1);
+				posChildren.add(new TreeNode(next[f]++, leaf, posNode));
+				posNode.setChildren(posChildren);
+				children[f].add(posNode);
+			}
+
+			private void addLeaf(TreeFormat format, StructureElement element) {
+				int f = format.ordinal();
+				children[f].add(new TreeNode(next[f]++, element, roots[f]));
+			}
+		}
+
+		/**
+		 * Builds the trees of the graph.
+		 * 
+		 * @return the trees, by format.
+		 * @throws IllegalArgumentException
+		 *             if the dependency graph contains a cycle.
+		 */
+		TreeNode[] run() {
+			// the dependency nodes of the frames in the stack
+			Set<DGNode> path = Collections.newSetFromMap(new IdentityHashMap<DGNode, Boolean>());
+			ArrayDeque<Frame> stack = new ArrayDeque<Frame>();
+			Frame root = new Frame(g.getRoot().getTarget(), g.getRoot(), ROOT_HEAD, null, false);
+			stack.push(root);
+			path.add(root.target);
+			while (true) {
+				Frame frame = stack.peek();
+				Frame child = frame.nextChild();
+				if (child != null) {
+					if (!path.add(child.target))
+						throw new IllegalArgumentException("The dependency graph contains a cycle");
+					stack.push(child);
+					continue;
+				}
+				stack.pop();
+				path.remove(frame.target);
+				TreeNode[] trees = frame.complete();
+				if (stack.isEmpty())
+					return trees;
+				stack.peek().addSubtrees(trees);
+			}
+		}
 	}
 }
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.tree;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+/**
+ * Writes the tree representations of dependency graphs in the KeLP textual
+ * format, e.g. to export a dataset. The text is the same returned by
+ * getTextFromData() on the TreeRepresentations built by
+ * {@link TreeRepresentationGenerator}, but it is produced during the visit of
+ * the graph, without building any TreeNode or StructureElement.
+ * <p>
+ * The text of a tree is composed in a buffer reused by all the invocations,
+ * and then written to the output at once, without copying it to a String, so
+ * that nothing is written when the tree cannot be built. A writer must not be
+ * used by many threads at the same time.
+ */
+public class TreeTextWriter {
+	private static final String LEX = "LEX##";
+	private static final String POS = "POS##";
+	private static final String SYNT = "SYNT##";
+	private static final String COMP = "COMP##";
+	private static final String LEMMA_POS_SEPARATOR = "::";
+	private static final String COMMA = "_comma_";
+
+	private final SyntElementLabelGenerator rg;
+	private final LexicalElementLabelGenerator ng;
+	private final PosElementLabelGenerator ig;
+	private final StringBuilder buffer = new StringBuilder(1024);
+	// the text copied out of the buffer for a Writer, which would otherwise
+	// turn the buffer into a new String
+	private char[] chars = new char[1024];
+
+	// the stack of the visit: the dependency nodes on the current path, the
+	// relations reaching them, the index of their next child and whether
+	// their own part of speech has already been written in a GRCT
+	private DGNode[] nodes = new DGNode[64];
+	private DGRelation[] relations = new DGRelation[64];
+	private int[] childIndexes = new int[64];
+	private boolean[] printedRootNodes = new boolean[64];
+	private int maxTop;
+	// the dependency nodes in the stack
+	private final Set<DGNode> path = Collections.newSetFromMap(new IdentityHashMap<DGNode, Boolean>());
+
+	/**
+	 * @param rg
+	 *            the label generator for SyntacticStructureElement.
+	 * @param ng
+	 *            the label generator for LexicalStructureElement.
+	 * @param ig
+	 *            the label generator for PosStructureElement.
+	 */
+	public TreeTextWriter(SyntElementLabelGenerator rg, LexicalElementLabelGenerator ng,
+			PosElementLabelGenerator ig) {
+		this.rg = rg;
+		this.ng = ng;
+		this.ig = ig;
+	}
+
+	/**
+	 * Writes the text of a tree representation of a graph.
+	 *
+	 * @param g
+	 *            the dependency graph.
+	 * @param format
+	 *            the representation to be written.
+	 * @param out
+	 *            the output, e.g. a Writer or a StringBuilder.
+	 * @throws IOException
+	 *             if the output fails.
+	 * @throws IllegalArgumentException
+	 *             if the dependency graph contains a cycle, or if the root
+	 *             depends on itself in a GRCT or CGRCT, which is null.
+	 */
+	public void write(DependencyGraph g, TreeFormat format, Appendable out) throws IOException {
+		buffer.setLength(0);
+		compose(g, format);
+		if (out instanceof Writer) {
+			int length = buffer.length();
+			if (chars.length < length)
+				chars = new char[Math.max(length, chars.length * 2)];
+			buffer.getChars(0, length, chars, 0);
+			((Writer) out).write(chars, 0, length);
+		} else {
+			out.append(buffer);
+		}
+	}
+
+	/**
+	 * @param g
+	 *            the dependency graph.
+	 * @param format
+	 *            the representation to be written.
+	 * @return the text of the tree representation of the graph.
+	 * @throws IllegalArgumentException
+	 *             if the dependency graph contains a cycle, or if the root
+	 *             depends on itself in a GRCT or CGRCT, which is null.
+	 */
+	public String toText(DependencyGraph g, TreeFormat format) {
+		buffer.setLength(0);
+		compose(g, format);
+		return buffer.toString();
+	}
+
+	private void compose(DependencyGraph g, TreeFormat format) {
+		LabelCache labels = LabelCache.of(g, rg, ng, ig);
+		boolean grct = format == TreeFormat.GRCT || format == TreeFormat.CGRCT;
+		int top = 0;
+		try {
+			if (grct && dependsOnItself(g, g.getRoot().getTarget()))
+				throw new IllegalArgumentException("The root of the dependency graph depends on itself");
+			push(top, g.getRoot().getTarget(), g.getRoot());
+			open(format, labels, top);
+			while (top >= 0) {
+				DGNode target = nodes[top];
+				List<DGRelation> childRelations = g.getRelationsWithSource(target);
+				if (childIndexes[top] < childRelations.size()) {
+					DGRelation relation = childRelations.get(childIndexes[top]++);
+					DGNode childNode = relation.getTarget();
+					if (grct && !printedRootNodes[top] && childNode.getStart() > target.getStart()) {
+						preterminal(labels, target, false);
+						printedRootNodes[top] = true;
+					}
+					if (childNode.equals(target))
+						continue;
+					// as in the generators, the GRCT subtree of a node depending
+					// on itself is dropped
+					if (grct && dependsOnItself(g, childNode))
+						continue;
+					if (path.contains(childNode))
+						throw new IllegalArgumentException("The dependency graph contains a cycle");
+					push(++top, childNode, relation);
+					open(format, labels, top);
+					continue;
+				}
+				close(format, labels, top, childRelations.isEmpty());
+				path.remove(target);
+				top--;
+			}
+		} finally {
+			// the graph must not be retained by the writer
+			Arrays.fill(nodes, 0, maxTop + 1, null);
+			Arrays.fill(relations, 0, maxTop + 1, null);
+			maxTop = 0;
+			path.clear();
+		}
+	}
+
+	private static boolean dependsOnItself(DependencyGraph g, DGNode node) {
+		for (DGRelation relation : g.getRelationsWithSource(node)) {
+			if (relation.getTarget().equals(node))
+				return true;
+		}
+		return false;
+	}
+
+	private void push(int top, DGNode node, DGRelation relation) {
+		if (top == nodes.length) {
+			int size = nodes.length * 2;
+			nodes = Arrays.copyOf(nodes, size);
+			relations = Arrays.copyOf(relations, size);
+			childIndexes = Arrays.copyOf(childIndexes, size);
+			printedRootNodes = Arrays.copyOf(printedRootNodes, size);
+		}
+		nodes[top] = node;
+		relations[top] = relation;
+		path.add(node);
+		maxTop = Math.max(maxTop, top);
+		childIndexes[top] = 0;
+		printedRootNodes[top] = false;
+	}
+
+	/**
+	 * Writes the beginning of the subtree of the dependency node in the
+	 * stack at the given position, i.e. its root element.
+	 */
+	private void open(TreeFormat format, LabelCache labels, int top) {
+		buffer.append('(');
+		switch (format) {
+		case GRCT:
+			buffer.append(SYNT).append(labels.getLabelOf(relations[top]));
+			break;
+		case CGRCT:
+		case CLCT:
+			compositional(labels, top);
+			break;
+		default:
+			lexical(labels, nodes[top]);
+			break;
+		}
+	}
+
+	/**
+	 * Writes the end of the subtree of the dependency node in the stack at
+	 * the given position, after its children.
+	 */
+	private void close(TreeFormat format, LabelCache labels, int top, boolean leaf) {
+		DGNode target = nodes[top];
+		switch (format) {
+		case GRCT:
+		case CGRCT:
+			if (leaf)
+				preterminal(labels, target, true);
+			else if (!printedRootNodes[top])
+				preterminal(labels, target, false);
+			break;
+		case LCT:
+			buffer.append('(').append(POS).append(labels.getPosLabelOf(target)).append(')');
+			buffer.append('(').append(SYNT).append(labels.getLabelOf(relations[top])).append(')');
+			break;
+		case CLCT:
+			buffer.append('(').append(POS).append(labels.getPosLabelOf(target)).append(')');
+			buffer.append('(').append(SYNT).append(labels.getLabelOf(relations[top])).append(')');
+			buffer.append('(');
+			lexical(labels, target);
+			buffer.append(')');
+			break;
+		default:
+			break;
+		}
+		buffer.append(')');
+	}
+
+	private void lexical(LabelCache labels, DGNode node) {
+		buffer.append(LEX).append(labels.getLemmaLabelOf(node)).append(LEMMA_POS_SEPARATOR)
+				.append(labels.getLexicalPosLabelOf(node));
+	}
+
+	/**
+	 * Writes the part-of-speech node of a GRCT, with its lexical child, whose
+	 * part of speech is truncated to the first character in the leaves.
+	 */
+	private void preterminal(LabelCache labels, DGNode node, boolean leaf) {
+		buffer.append('(').append(POS).append(labels.getPosLabelOf(node)).append('(').append(LEX)
+				.append(labels.getLemmaLabelOf(node)).append(LEMMA_POS_SEPARATOR);
+		String pos = labels.getLexicalPosLabelOf(node);
+		if (leaf)
+			buffer.append(pos.substring(0, 1));
+		else
+			buffer.append(pos);
+		buffer.append("))");
+	}
+
+	private void compositional(LabelCache labels, int top) {
+		buffer.append(COMP).append(labels.getLabelOf(relations[top])).append('<');
+		if (top == 0 || relations[top].getSource() == null) {
+			buffer.append("*::*");
+		} else {
+			DGNode head = relations[top].getSource();
+			escaped(labels.getLemmaLabelOf(head));
+			buffer.append(LEMMA_POS_SEPARATOR);
+			escaped(labels.getLexicalPosLabelOf(head));
+		}
+		buffer.append(',');
+		escaped(labels.getLemmaLabelOf(nodes[top]));
+		buffer.append(LEMMA_POS_SEPARATOR);
+		escaped(labels.getLexicalPosLabelOf(nodes[top]));
+		buffer.append('>');
+	}
+
+	/**
+	 * Appends a label of a compositional element, where commas separate the
+	 * head from the modifier.
+	 */
+	private void escaped(String label) {
+		if (label == null) {
+			buffer.append(label);
+			return;
+		}
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if (c == ',')
+				buffer.append(COMMA);
+			else
+				buffer.append(c);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Simone Filice and Giuseppe Castellucci and Danilo Croce and Roberto Basili
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.uniroma2.sag.kelp.input.tree.generators;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
+
+/**
+ * Memoizes the normalizations applied by a label generator, so that each
+ * distinct label is lower-cased or truncated only once. The normalized labels
+ * can also be interned in a SymbolTable owned by the caller.
+ * <p>
+ * Every generator owns its normalizer. At most {@link #MAX_SIZE} labels are
+ * memoized for each normalization: when the limit is reached the memoized
+ * labels are dropped, so a long-running process does not retain every label
+ * it has ever seen.
+ */
+final class LabelNormalizer {
+	static final int MAX_SIZE = 1 << 16;
+
+	private final SymbolTable symbolTable;
+	private final ConcurrentHashMap<String, String> lowerCase = new ConcurrentHashMap<String, String>();
+	private final ConcurrentHashMap<String, String> lowerCaseInitial = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * @param symbolTable
+	 *            the table where the normalized labels are interned, or null
+	 *            not to intern them.
+	 */
+	LabelNormalizer(SymbolTable symbolTable) {
+		this.symbolTable = symbolTable;
+	}
+
+	/**
+	 * @return the lower-cased label.
+	 */
+	String lowerCase(String label) {
+		String normalized = lowerCase.get(label);
+		if (normalized == null) {
+			normalized = intern(label.toLowerCase());
+			memoize(lowerCase, label, normalized);
+		}
+		return normalized;
+	}
+
+	/**
+	 * @return the first character of the label, lower-cased.
+	 */
+	String lowerCaseInitial(String label) {
+		String normalized = lowerCaseInitial.get(label);
+		if (normalized == null) {
+			normalized = intern(label.substring(0, 1).toLowerCase());
+			memoize(lowerCaseInitial, label, normalized);
+		}
+		return normalized;
+	}
+
+	private String intern(String label) {
+		return symbolTable == null ? label : symbolTable.intern(label);
+	}
+
+	private static void memoize(ConcurrentHashMap<String, String> labels, String label, String normalized) {
+		if (labels.size() >= MAX_SIZE)
+			labels.clear();
+		labels.putIfAbsent(label, normalized);
+	}
+}
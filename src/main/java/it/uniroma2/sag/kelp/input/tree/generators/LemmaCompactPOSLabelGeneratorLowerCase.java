@@ -17,19 +17,39 @@ package it.uniroma2.sag.kelp.input.tree.generators;
 
 import it.uniroma2.sag.kelp.input.parser.model.DGNode;
 import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
 
 public class LemmaCompactPOSLabelGeneratorLowerCase implements LexicalElementLabelGenerator {
+	private final LabelNormalizer normalizer;
+
+	/**
+	 * Creates a generator whose labels are not interned.
+	 */
+	public LemmaCompactPOSLabelGeneratorLowerCase() {
+		this(null);
+	}
+
+	/**
+	 * Creates a generator whose labels are interned in the given SymbolTable,
+	 * which should be owned by the caller.
+	 *
+	 * @param symbolTable
+	 *            the table where the labels are interned.
+	 */
+	public LemmaCompactPOSLabelGeneratorLowerCase(SymbolTable symbolTable) {
+		normalizer = new LabelNormalizer(symbolTable);
+	}
 
 	@Override
 	public String getLemmaLabelOf(DGNode n, DependencyGraph g) {
-		String lemma = (String) n.getProperties().get("lemma");
-		return lemma.toLowerCase();
+		String lemma = n.getLemma();
+		return normalizer.lowerCase(lemma);
 	}
 
 	@Override
 	public String getPosLabelOf(DGNode n, DependencyGraph g) {
-		String pos = (String) n.getProperties().get("pos");
-		return pos.substring(0,1).toLowerCase();
+		String pos = n.getPos();
+		return normalizer.lowerCaseInitial(pos);
 	}
 
 }
@@ -17,13 +17,33 @@ package it.uniroma2.sag.kelp.input.tree.generators;
 
 import it.uniroma2.sag.kelp.input.parser.model.DGNode;
 import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
 
 public class OnlyLemmaLabelGenerator implements LexicalElementLabelGenerator {
+	private final LabelNormalizer normalizer;
+
+	/**
+	 * Creates a generator whose labels are not interned.
+	 */
+	public OnlyLemmaLabelGenerator() {
+		this(null);
+	}
+
+	/**
+	 * Creates a generator whose labels are interned in the given SymbolTable,
+	 * which should be owned by the caller.
+	 *
+	 * @param symbolTable
+	 *            the table where the labels are interned.
+	 */
+	public OnlyLemmaLabelGenerator(SymbolTable symbolTable) {
+		normalizer = new LabelNormalizer(symbolTable);
+	}
 
 	@Override
 	public String getLemmaLabelOf(DGNode n, DependencyGraph g) {
-		String lemma = (String) n.getProperties().get("lemma");
-		return lemma.toLowerCase();
+		String lemma = n.getLemma();
+		return normalizer.lowerCase(lemma);
 	}
 
 	@Override
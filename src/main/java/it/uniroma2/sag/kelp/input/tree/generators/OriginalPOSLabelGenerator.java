@@ -22,7 +22,7 @@ public class OriginalPOSLabelGenerator implements PosElementLabelGenerator {
 
 	@Override
 	public String getPosLabelOf(DGNode n, DependencyGraph g) {
-		String pos = (String) n.getProperties().get("pos");
+		String pos = n.getPos();
 		return pos;
 	}
 
@@ -22,7 +22,7 @@ public class RelationNameLabelGenerator implements SyntElementLabelGenerator {
 
 	@Override
 	public String getLabelOf(DGRelation r, DependencyGraph g) {
-		String type = (String)r.getProperties().get("type");
+		String type = r.getType();
 		return type;
 	}
 
@@ -0,0 +1,140 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.input.parser.AbstractDependencyParser;
+import it.uniroma2.sag.kelp.input.parser.impl.CachingDependencyParser;
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+public class CachingDependencyParserTest {
+
+	/**
+	 * Builds a flat graph with one node per word and counts the parsed
+	 * sentences.
+	 */
+	private static class CountingParser extends AbstractDependencyParser {
+		private int parsed;
+		private String type = "dep";
+
+		@Override
+		public Object getConfiguration() {
+			return type;
+		}
+
+		@Override
+		public void initialize() {
+		}
+
+		@Override
+		public void finalize() throws Throwable {
+		}
+
+		@Override
+		public DependencyGraph parse(String sentence) {
+			parsed++;
+			DependencyGraph graph = new DependencyGraph();
+			graph.setSentence(sentence);
+			List<DGNode> nodes = new ArrayList<DGNode>();
+			List<DGRelation> relations = new ArrayList<DGRelation>();
+			int start = 0;
+			for (String word : sentence.split(" ")) {
+				DGNode node = new DGNode();
+				node.setId(nodes.size() + 1);
+				node.setStart(start);
+				node.setEnd(start + word.length());
+				node.setSurface(word);
+				nodes.add(node);
+				DGRelation relation = new DGRelation();
+				relation.setTarget(node);
+				relation.setType(type);
+				relations.add(relation);
+				start += word.length() + 1;
+			}
+			graph.setNodes(nodes);
+			graph.setRelations(relations);
+			return graph;
+		}
+	}
+
+	@Test
+	public void testRepeatedSentencesAreParsedOnce() {
+		CountingParser counting = new CountingParser();
+		CachingDependencyParser parser = new CachingDependencyParser(counting, 10);
+
+		DependencyGraph first = parser.parse("The cat runs");
+		DependencyGraph second = parser.parse("The cat runs");
+		Assert.assertSame(first, second);
+		Assert.assertTrue(first.isFrozen());
+		Assert.assertEquals(1, counting.parsed);
+		Assert.assertEquals(1, parser.getHitCount());
+		Assert.assertEquals(1, parser.getMissCount());
+		Assert.assertEquals(3, parser.getWeight());
+
+		List<DependencyGraph> graphs = parser.parseAll(Arrays.asList("A dog", "The cat runs", "A dog"));
+		Assert.assertEquals(3, graphs.size());
+		Assert.assertSame(first, graphs.get(1));
+		Assert.assertEquals("A dog", graphs.get(0).getSentence());
+		Assert.assertEquals("A dog", graphs.get(2).getSentence());
+		Assert.assertEquals(2, parser.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		CountingParser counting = new CountingParser();
+		CachingDependencyParser parser = new CachingDependencyParser(counting, 2);
+
+		parser.parse("one");
+		parser.parse("two");
+		parser.parse("one");
+		parser.parse("three");
+		Assert.assertEquals(2, parser.size());
+		Assert.assertEquals(1, parser.getEvictionCount());
+
+		parser.parse("one");
+		Assert.assertEquals(3, counting.parsed);
+		parser.parse("two");
+		Assert.assertEquals(4, counting.parsed);
+	}
+
+	@Test
+	public void testWeightBound() {
+		CountingParser counting = new CountingParser();
+		CachingDependencyParser parser = new CachingDependencyParser(counting, 10, 4);
+
+		parser.parse("a b c");
+		parser.parse("d e");
+		Assert.assertEquals(1, parser.size());
+		Assert.assertEquals(2, parser.getWeight());
+
+		parser.parse("a b c d e f");
+		Assert.assertEquals(1, parser.size());
+		parser.parse("a b c d e f");
+		Assert.assertEquals(4, counting.parsed);
+	}
+
+	@Test
+	public void testConfigurationChange() {
+		CountingParser counting = new CountingParser();
+		CachingDependencyParser parser = new CachingDependencyParser(counting, 10);
+
+		parser.parse("a b");
+		parser.parse("c");
+		counting.type = "amod";
+		DependencyGraph graph = parser.parse("a b");
+		Assert.assertEquals(3, counting.parsed);
+		Assert.assertEquals("amod", graph.getRelations().get(0).getType());
+		Assert.assertEquals(1, parser.size());
+		Assert.assertEquals(2, parser.getWeight());
+
+		List<DependencyGraph> graphs = parser.parseAll(Arrays.asList("a b", "c"));
+		Assert.assertSame(graph, graphs.get(0));
+		Assert.assertEquals(4, counting.parsed);
+	}
+}
@@ -0,0 +1,98 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.input.corpus.ColumnarCorpus;
+import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper;
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.RelationNameLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+public class ColumnarCorpusTest {
+	private String testSentence1 = "The cat runs over the grass.";
+	private String testSentence2 = "Yesterday, I was at the sea looking for a shell.";
+
+	@Test
+	public void testRoundTrip() {
+		DependencyParser parser = new StanfordParserWrapper();
+		parser.initialize();
+		SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+		LexicalElementLabelGenerator ng = new LemmaCompactPOSLabelGeneratorLowerCase();
+		PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+
+		DependencyGraph parse1 = parser.parse(testSentence1);
+		DependencyGraph parse2 = parser.parse(testSentence2);
+		ColumnarCorpus corpus = new ColumnarCorpus();
+		Assert.assertEquals(0, corpus.add(parse1));
+		Assert.assertEquals(1, corpus.add(parse2));
+		corpus.trimToSize();
+
+		Assert.assertEquals(2, corpus.size());
+		Assert.assertEquals(parse1.getNodes().size() + parse2.getNodes().size(), corpus.getTokenCount());
+		Assert.assertEquals(testSentence2, corpus.getSentence(1));
+		Assert.assertEquals("run", corpus.label(corpus.getLemmaId(0, 2)));
+		Assert.assertEquals(ColumnarCorpus.ROOT_HEAD, corpus.getHead(0, 2));
+
+		int i = 0;
+		for (DependencyGraph graph : corpus) {
+			DependencyGraph original = i == 0 ? parse1 : parse2;
+			Assert.assertEquals(original.getSentence(), graph.getSentence());
+			Assert.assertEquals(original.getRelations().size(), graph.getRelations().size());
+			Assert.assertEquals(TreeRepresentationGenerator.grctGenerator(original, rg, ng, ig).getTextFromData(),
+					TreeRepresentationGenerator.grctGenerator(graph, rg, ng, ig).getTextFromData());
+			Assert.assertEquals(TreeRepresentationGenerator.clctGenerator(original, rg, ng, ig).getTextFromData(),
+					TreeRepresentationGenerator.clctGenerator(graph, rg, ng, ig).getTextFromData());
+			i++;
+		}
+		Assert.assertEquals(2, i);
+	}
+
+	@Test
+	public void testGovernorWithoutId() {
+		List<DGNode> nodes = new ArrayList<DGNode>();
+		List<DGRelation> relations = new ArrayList<DGRelation>();
+		for (int i = 0; i < 2; i++) {
+			DGNode node = new DGNode();
+			node.setLemma("word");
+			node.setPos("NN");
+			nodes.add(node);
+		}
+		nodes.get(0).setId(1);
+		DGRelation root = new DGRelation();
+		root.setTarget(nodes.get(1));
+		root.setType("root");
+		relations.add(root);
+		// the governor of this relation has no id, so it cannot be encoded
+		DGRelation relation = new DGRelation();
+		relation.setSource(nodes.get(1));
+		relation.setTarget(nodes.get(0));
+		relation.setType("dep");
+		relations.add(relation);
+		DependencyGraph graph = new DependencyGraph();
+		graph.setNodes(nodes);
+		graph.setRelations(relations);
+		graph.setRoot(root);
+
+		ColumnarCorpus corpus = new ColumnarCorpus();
+		try {
+			corpus.add(graph);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		Assert.assertEquals(0, corpus.size());
+		Assert.assertEquals(0, corpus.getTokenCount());
+	}
+}
@@ -0,0 +1,101 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.input.parser.impl.ConllUReader;
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeFormat;
+import it.uniroma2.sag.kelp.input.tree.TreeTextWriter;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.RelationNameLabelGenerator;
+
+public class ConllUReaderTest {
+	private static final String CONLLU = "# sent_id = 1\n"
+			+ "# text = The cat runs on the grass.\n"
+			+ "1\tThe\tthe\tDET\tDT\t_\t2\tdet\t_\t_\n"
+			+ "2\tcat\tcat\tNOUN\tNN\t_\t3\tnsubj\t_\t_\n"
+			+ "3\truns\trun\tVERB\tVBZ\t_\t0\troot\t_\t_\n"
+			+ "4\ton\ton\tADP\tIN\t_\t6\tcase\t_\t_\n"
+			+ "5\tthe\tthe\tDET\tDT\t_\t6\tdet\t_\t_\n"
+			+ "6\tgrass\tgrass\tNOUN\tNN\t_\t3\tnmod\t_\tSpaceAfter=No\n"
+			+ "7\t.\t.\tPUNCT\t.\t_\t3\tpunct\t_\t_\n"
+			+ "\n"
+			+ "1-2\tdon't\t_\t_\t_\t_\t_\t_\t_\t_\n"
+			+ "1\tdo\tdo\tAUX\t_\t_\t3\taux\t_\tSpaceAfter=No\n"
+			+ "2\tn't\tnot\tPART\t_\t_\t3\tadvmod\t_\t_\n"
+			+ "3\tgo\tgo\tVERB\t_\t_\t0\troot\t_\t_\n"
+			+ "3.1\tgo\tgo\tVERB\t_\t_\t_\t_\t3:conj\t_\n"
+			+ "\n"
+			+ "1\tHello\thello\tINTJ\tUH\t_\t0\troot\t_\tTokenRange=10:15\n"
+			+ "\n";
+
+	@Test
+	public void testReadStream() {
+		ConllUReader reader = new ConllUReader(new StringReader(CONLLU));
+		List<DependencyGraph> graphs = new ArrayList<DependencyGraph>();
+		for (DependencyGraph graph : reader)
+			graphs.add(graph);
+		Assert.assertEquals(3, graphs.size());
+
+		DependencyGraph first = graphs.get(0);
+		Assert.assertEquals("The cat runs on the grass.", first.getSentence());
+		Assert.assertEquals(7, first.getNodes().size());
+		Assert.assertEquals(7, first.getRelations().size());
+		Assert.assertEquals("root", first.getRoot().getType());
+		Assert.assertEquals("runs", first.getRoot().getTarget().getSurface());
+		Assert.assertEquals("VBZ", first.getRoot().getTarget().getPos());
+		DGNode grass = first.getDGNodeById(6);
+		Assert.assertEquals(20, grass.getStart());
+		Assert.assertEquals(25, grass.getEnd());
+		for (DGRelation relation : first.getRelations()) {
+			if (relation.getType().equals("nsubj")) {
+				Assert.assertEquals("runs", relation.getSource().getSurface());
+				Assert.assertEquals("cat", relation.getTarget().getSurface());
+				Assert.assertEquals(3, relation.getFromId());
+			}
+		}
+
+		DependencyGraph second = graphs.get(1);
+		Assert.assertEquals("don't go", second.getSentence());
+		Assert.assertEquals(3, second.getNodes().size());
+		Assert.assertEquals("PART", second.getDGNodeById(2).getPos());
+		Assert.assertEquals(2, second.getDGNodeById(2).getStart());
+		Assert.assertEquals(6, second.getDGNodeById(3).getStart());
+
+		DGNode hello = graphs.get(2).getNodes().get(0);
+		Assert.assertEquals(10, hello.getStart());
+		Assert.assertEquals(15, hello.getEnd());
+	}
+
+	@Test
+	public void testParseBlock() {
+		DependencyGraph graph = new ConllUReader().parse(CONLLU);
+		Assert.assertEquals(7, graph.getNodes().size());
+		Assert.assertEquals("cat", graph.getDGNodeById(2).getLemma());
+	}
+
+	@Test
+	public void testMissingLemma() {
+		DependencyGraph graph = new ConllUReader().parse("1\tCats\t_\tNOUN\tNNS\t_\t2\tnsubj\t_\t_\n"
+				+ "2\tsleep\t_\tVERB\tVBP\t_\t0\troot\t_\t_\n");
+		DGNode cats = graph.getDGNodeById(1);
+		Assert.assertEquals("Cats", cats.getLemma());
+		Assert.assertEquals("cats", new LemmaCompactPOSLabelGeneratorLowerCase().getLemmaLabelOf(cats, null));
+		Assert.assertEquals("(LEX##sleep::v(LEX##cats::n))", new TreeTextWriter(new RelationNameLabelGenerator(),
+				new LemmaCompactPOSLabelGeneratorLowerCase(), new OriginalPOSLabelGenerator()).toText(graph,
+						TreeFormat.LOCT));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMalformedLine() {
+		new ConllUReader().parse("1\tThe\tthe\n");
+	}
+}
@@ -0,0 +1,65 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.impl.ConllUReader;
+import it.uniroma2.sag.kelp.input.parser.impl.ConllUWriter;
+import it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.RelationNameLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+public class ConllUWriterTest {
+	private String testSentence1 = "The cat runs over the grass.";
+	private String testSentence2 = "Yesterday, I was at the sea looking for a shell.";
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		DependencyParser parser = new StanfordParserWrapper();
+		parser.initialize();
+		SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+		LexicalElementLabelGenerator ng = new LemmaCompactPOSLabelGeneratorLowerCase();
+		PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+
+		List<DependencyGraph> parses = new ArrayList<DependencyGraph>();
+		parses.add(parser.parse(testSentence1));
+		parses.add(parser.parse(testSentence2));
+
+		StringWriter buffer = new StringWriter();
+		ConllUWriter writer = new ConllUWriter(buffer);
+		writer.writeAll(parses);
+		writer.close();
+		String conllu = buffer.toString();
+		Assert.assertTrue(conllu.startsWith("# text = " + testSentence1 + "\n# parser = StanfordParser\n"));
+		Assert.assertTrue(conllu.contains("\tgrass\tgrass\t_\tNN\t_\t3\tnmod\t_\tTokenRange=22:27|SpaceAfter=No\n"));
+
+		ConllUReader reader = new ConllUReader(new StringReader(conllu));
+		int i = 0;
+		for (DependencyGraph graph : reader) {
+			DependencyGraph original = parses.get(i);
+			Assert.assertEquals(original.getSentence(), graph.getSentence());
+			Assert.assertEquals(original.getParserName(), graph.getParserName());
+			Assert.assertEquals(original.getParserVersion(), graph.getParserVersion());
+			Assert.assertEquals(original.getRelations().size(), graph.getRelations().size());
+			Assert.assertEquals(TreeRepresentationGenerator.grctGenerator(original, rg, ng, ig).getTextFromData(),
+					TreeRepresentationGenerator.grctGenerator(graph, rg, ng, ig).getTextFromData());
+			Assert.assertEquals(TreeRepresentationGenerator.lctGenerator(original, rg, ng, ig).getTextFromData(),
+					TreeRepresentationGenerator.lctGenerator(graph, rg, ng, ig).getTextFromData());
+			i++;
+		}
+		Assert.assertEquals(2, i);
+	}
+}
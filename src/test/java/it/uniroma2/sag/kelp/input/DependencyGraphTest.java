@@ -0,0 +1,165 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+public class DependencyGraphTest {
+
+	private static DGNode node(int id, int start) {
+		DGNode node = new DGNode();
+		Map<String, Object> props = new HashMap<String, Object>();
+		props.put("id", id);
+		props.put("start", start);
+		props.put("end", start + 1);
+		node.setProperties(props);
+		return node;
+	}
+
+	private static DGRelation relation(DGNode source, DGNode target, String type) {
+		DGRelation relation = new DGRelation();
+		relation.setSource(source);
+		relation.setTarget(target);
+		Map<String, Object> props = new HashMap<String, Object>();
+		props.put("type", type);
+		relation.setProperties(props);
+		return relation;
+	}
+
+	@Test
+	public void testRelationsWithSourceAreSortedByTargetStart() {
+		DGNode a = node(1, 0);
+		DGNode b = node(2, 2);
+		DGNode c = node(3, 4);
+		List<DGNode> nodes = new ArrayList<DGNode>();
+		nodes.add(a);
+		nodes.add(b);
+		nodes.add(c);
+
+		List<DGRelation> relations = new ArrayList<DGRelation>();
+		relations.add(relation(b, c, "obj"));
+		relations.add(relation(null, b, "root"));
+		relations.add(relation(b, a, "nsubj"));
+
+		DependencyGraph graph = new DependencyGraph();
+		graph.setNodes(nodes);
+		graph.setRelations(relations);
+
+		List<DGRelation> children = graph.getRelationsWithSource(b);
+		Assert.assertEquals(2, children.size());
+		Assert.assertSame(a, children.get(0).getTarget());
+		Assert.assertSame(c, children.get(1).getTarget());
+		Assert.assertSame(children, graph.getRelationsWithSource(b));
+		Assert.assertTrue(graph.getRelationsWithSource(a).isEmpty());
+
+		List<DGRelation> newRelations = new ArrayList<DGRelation>(relations);
+		newRelations.add(relation(a, c, "dep"));
+		graph.setRelations(newRelations);
+		Assert.assertEquals(1, graph.getRelationsWithSource(a).size());
+	}
+
+	@Test
+	public void testGetDGNodeById() {
+		DGNode a = node(1, 0);
+		DGNode b = node(2, 2);
+		DGNode foreign = node(1000, 4);
+		List<DGNode> nodes = new ArrayList<DGNode>();
+		nodes.add(a);
+		nodes.add(b);
+		nodes.add(foreign);
+
+		DependencyGraph graph = new DependencyGraph();
+		graph.setNodes(nodes);
+		Assert.assertSame(a, graph.getDGNodeById(1));
+		Assert.assertSame(b, graph.getDGNodeById(2));
+		Assert.assertSame(foreign, graph.getDGNodeById(1000));
+		Assert.assertNull(graph.getDGNodeById(3));
+
+		DGNode added = node(3, 6);
+		graph.getNodes().add(added);
+		Assert.assertSame(added, graph.getDGNodeById(3));
+	}
+
+	@Test
+	public void testPropertiesView() {
+		DGNode node = node(4, 10);
+		node.getProperties().put("lemma", "cat");
+		node.getProperties().put("ner", "O");
+		Assert.assertEquals(4, node.getId());
+		Assert.assertEquals(10, node.getStart());
+		Assert.assertEquals("cat", node.getLemma());
+		Assert.assertEquals("O", node.getProperties().get("ner"));
+		Assert.assertEquals(5, node.getProperties().size());
+
+		node.getProperties().put("start", "ten");
+		Assert.assertEquals(-1, node.getStart());
+		Assert.assertEquals("ten", node.getProperties().get("start"));
+		node.setStart(10);
+		Assert.assertEquals(Integer.valueOf(10), node.getProperties().get("start"));
+		Assert.assertEquals(5, node.getProperties().size());
+
+		node.getProperties().remove("lemma");
+		Assert.assertNull(node.getLemma());
+		Assert.assertFalse(node.getProperties().containsKey("lemma"));
+
+		DGRelation relation = relation(null, node, "root");
+		relation.getProperties().put("fromId", 0);
+		Assert.assertEquals("root", relation.getType());
+		Assert.assertEquals(0, relation.getFromId());
+	}
+
+	@Test
+	public void testFreeze() {
+		DGNode a = node(1, 0);
+		DGNode b = node(2, 2);
+		List<DGNode> nodes = new ArrayList<DGNode>();
+		nodes.add(a);
+		nodes.add(b);
+		List<DGRelation> relations = new ArrayList<DGRelation>();
+		DGRelation root = relation(null, b, "root");
+		relations.add(root);
+		relations.add(relation(b, a, "nsubj"));
+
+		DependencyGraph graph = new DependencyGraph();
+		graph.setNodes(nodes);
+		graph.setRelations(relations);
+		graph.setRoot(root);
+		Assert.assertSame(graph, graph.freeze());
+		Assert.assertTrue(graph.isFrozen());
+		Assert.assertTrue(a.isFrozen());
+		Assert.assertSame(b, graph.getDGNodeById(2));
+		Assert.assertEquals(1, graph.getRelationsWithSource(b).size());
+		Assert.assertEquals("cat", graph.cacheValue("key", "cat"));
+		Assert.assertEquals("cat", graph.cacheValue("key", "dog"));
+		Assert.assertEquals("cat", graph.getCachedValue("key"));
+
+		try {
+			graph.setSentence("A sentence.");
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			graph.getNodes().add(node(3, 4));
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			a.setLemma("cat");
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+		}
+		try {
+			root.getProperties().put("type", "dep");
+			Assert.fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.example.Example;
+import it.uniroma2.sag.kelp.data.example.SimpleExample;
+import it.uniroma2.sag.kelp.input.parser.AbstractDependencyParser;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.pipeline.ExampleGenerator;
+import it.uniroma2.sag.kelp.input.pipeline.ExamplePipeline;
+import it.uniroma2.sag.kelp.input.pipeline.ExampleSink;
+
+public class ExamplePipelineTest {
+
+	/**
+	 * Returns graphs holding only the sentence after a random delay, so that
+	 * the workers complete out of order; "skip" is not parsed and "fail" makes
+	 * the parser fail.
+	 */
+	private static class SlowParser extends AbstractDependencyParser {
+		private final Random random = new Random(0);
+
+		@Override
+		public void initialize() {
+		}
+
+		@Override
+		public void finalize() throws Throwable {
+		}
+
+		@Override
+		public DependencyGraph parse(String sentence) {
+			if (sentence.equals("fail"))
+				throw new IllegalArgumentException("Cannot parse");
+			if (sentence.equals("skip"))
+				return null;
+			int delay;
+			synchronized (random) {
+				delay = random.nextInt(3);
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			DependencyGraph graph = new DependencyGraph();
+			graph.setSentence(sentence);
+			return graph;
+		}
+	}
+
+	private static class SentenceExample extends SimpleExample {
+		private final String sentence;
+
+		SentenceExample(String sentence) {
+			this.sentence = sentence;
+		}
+	}
+
+	private static final ExampleGenerator GENERATOR = new ExampleGenerator() {
+		@Override
+		public Example generate(String sentence, DependencyGraph graph) {
+			return new SentenceExample(graph.getSentence());
+		}
+	};
+
+	private static class CollectingSink implements ExampleSink {
+		private final List<String> sentences = new ArrayList<String>();
+
+		@Override
+		public void write(Example example) throws IOException {
+			sentences.add(((SentenceExample) example).sentence);
+		}
+	}
+
+	@Test
+	public void testOrderIsPreserved() throws IOException {
+		List<String> input = new ArrayList<String>();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			String sentence = i % 50 == 7 ? "skip" : "sentence " + i;
+			input.add(sentence);
+			if (!sentence.equals("skip"))
+				expected.add(sentence);
+		}
+
+		ExamplePipeline pipeline = new ExamplePipeline(new SlowParser(), GENERATOR);
+		pipeline.setParseThreads(4);
+		pipeline.setGenerationThreads(2);
+		pipeline.setMaxInFlight(16);
+		CollectingSink sink = new CollectingSink();
+		Assert.assertEquals(expected.size(), pipeline.run(input.iterator(), sink));
+		Assert.assertEquals(expected, sink.sentences);
+	}
+
+	@Test
+	public void testErrorsAreRethrown() throws IOException {
+		List<String> input = new ArrayList<String>();
+		for (int i = 0; i < 100; i++)
+			input.add(i == 42 ? "fail" : "sentence " + i);
+
+		ExamplePipeline pipeline = new ExamplePipeline(new SlowParser(), GENERATOR);
+		pipeline.setParseThreads(3);
+		pipeline.setMaxInFlight(8);
+		CollectingSink sink = new CollectingSink();
+		try {
+			pipeline.run(input.iterator(), sink);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals("Cannot parse", e.getMessage());
+		}
+		Assert.assertEquals(42, sink.sentences.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testInputErrorsAreRethrown() throws IOException {
+		// fails with an Error after the first sentences
+		Iterator<String> input = new Iterator<String>() {
+			private int i;
+
+			@Override
+			public boolean hasNext() {
+				if (i == 10)
+					throw new AssertionError("Broken input");
+				return true;
+			}
+
+			@Override
+			public String next() {
+				return "sentence " + i++;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		ExamplePipeline pipeline = new ExamplePipeline(new SlowParser(), GENERATOR);
+		pipeline.setParseThreads(2);
+		CollectingSink sink = new CollectingSink();
+		try {
+			pipeline.run(input, sink);
+			Assert.fail();
+		} catch (AssertionError e) {
+			Assert.assertEquals("Broken input", e.getMessage());
+		}
+		Assert.assertEquals(10, sink.sentences.size());
+	}
+}
@@ -0,0 +1,85 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.input.corpus.ParseStoreReader;
+import it.uniroma2.sag.kelp.input.corpus.ParseStoreWriter;
+import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.RelationNameLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+public class ParseStoreTest {
+	private String testSentence1 = "The cat runs over the grass.";
+	private String testSentence2 = "Yesterday, I was at the sea looking for a shell.";
+	private String testSentence3 = "Perch\u00e9 \u00e8 cos\u00ec gi\u00e0?";
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		DependencyParser parser = new StanfordParserWrapper();
+		parser.initialize();
+		SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+		LexicalElementLabelGenerator ng = new LemmaCompactPOSLabelGeneratorLowerCase();
+		PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+
+		List<DependencyGraph> parses = new ArrayList<DependencyGraph>();
+		parses.add(parser.parse(testSentence1));
+		parses.add(parser.parse(testSentence2));
+		parses.add(parser.parse(testSentence3));
+
+		File file = File.createTempFile("parses", ".kdg");
+		file.deleteOnExit();
+		ParseStoreWriter writer = new ParseStoreWriter(file);
+		writer.writeAll(parses);
+		Assert.assertEquals(3, writer.size());
+		writer.close();
+
+		ParseStoreReader reader = new ParseStoreReader(file);
+		try {
+			Assert.assertEquals(3, reader.size());
+			Assert.assertEquals(testSentence3, reader.getSentence(2));
+			Assert.assertEquals(parses.get(1).getNodes().size(), reader.getTokenCount(1));
+
+			DependencyGraph graph = reader.getGraph(1);
+			Assert.assertEquals(testSentence2, graph.getSentence());
+			Assert.assertEquals("StanfordParser", graph.getParserName());
+
+			int i = 0;
+			for (DependencyGraph stored : reader) {
+				DependencyGraph original = parses.get(i);
+				Assert.assertEquals(original.getSentence(), stored.getSentence());
+				Assert.assertEquals(original.getRelations().size(), stored.getRelations().size());
+				Assert.assertEquals(original.getRoot().getTarget().getStart(), stored.getRoot().getTarget().getStart());
+				Assert.assertEquals(
+						TreeRepresentationGenerator.grctGenerator(original, rg, ng, ig).getTextFromData(),
+						TreeRepresentationGenerator.grctGenerator(stored, rg, ng, ig).getTextFromData());
+				Assert.assertEquals(
+						TreeRepresentationGenerator.loctGenerator(original, rg, ng, ig).getTextFromData(),
+						TreeRepresentationGenerator.loctGenerator(stored, rg, ng, ig).getTextFromData());
+				i++;
+			}
+			Assert.assertEquals(3, i);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAParseStore() throws IOException {
+		File file = File.createTempFile("parses", ".kdg");
+		file.deleteOnExit();
+		new ParseStoreReader(file);
+	}
+}
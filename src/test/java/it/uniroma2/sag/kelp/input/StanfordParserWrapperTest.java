@@ -1,16 +1,36 @@
 package it.uniroma2.sag.kelp.input;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import edu.stanford.nlp.ie.machinereading.RelationFeatureFactory.DEPENDENCY_TYPE;
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
 import it.uniroma2.sag.kelp.input.parser.DependencyParser;
 import it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper;
+import it.uniroma2.sag.kelp.input.parser.impl.StanfordPipelineRegistry;
+import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
+import it.uniroma2.sag.kelp.input.parser.model.ConstituencyNode;
 import it.uniroma2.sag.kelp.input.parser.model.DGNode;
 import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
 import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
 
 public class StanfordParserWrapperTest {
 	private static DependencyParser parser;
@@ -177,4 +197,340 @@ public class StanfordParserWrapperTest {
 		}
 	}
 
+	@Test
+	public void testParseAll() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.setNumThreads(3);
+		wrapper.initialize();
+
+		List<String> sentences = new ArrayList<String>();
+		sentences.add("The cat runs on the grass.");
+		sentences.add("Yesterday, I was at the sea looking for a shell.");
+		sentences.add("The dog jumped the wall behind the house.");
+		sentences.add("Time flies.");
+		List<DependencyGraph> parses = wrapper.parseAll(sentences);
+		Assert.assertEquals(sentences.size(), parses.size());
+		for (int i = 0; i < sentences.size(); i++) {
+			DependencyGraph expected = wrapper.parse(sentences.get(i));
+			DependencyGraph parse = parses.get(i);
+			Assert.assertEquals(sentences.get(i), parse.getSentence());
+			Assert.assertEquals(expected.getNodes().size(), parse.getNodes().size());
+			Assert.assertEquals(expected.getRelations().size(), parse.getRelations().size());
+			for (int j = 0; j < expected.getRelations().size(); j++) {
+				Assert.assertEquals(expected.getRelations().get(j).getType(), parse.getRelations().get(j).getType());
+				Assert.assertEquals(expected.getRelations().get(j).getFromId(),
+						parse.getRelations().get(j).getFromId());
+			}
+		}
+	}
+
+	@Test
+	public void testParseDocument() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.initialize();
+
+		String document = "The cat runs on the grass. Yesterday, I was at the sea looking for a shell.";
+		List<DependencyGraph> parses = wrapper.parseDocument(document);
+		Assert.assertEquals(2, parses.size());
+		Assert.assertEquals("The cat runs on the grass.", parses.get(0).getSentence());
+		Assert.assertEquals("Yesterday, I was at the sea looking for a shell.", parses.get(1).getSentence());
+		Assert.assertEquals(7, parses.get(0).getNodes().size());
+
+		DGNode first = parses.get(1).getDGNodeById(1);
+		Assert.assertEquals("Yesterday", first.getSurface());
+		Assert.assertEquals(document.indexOf("Yesterday"), first.getStart());
+		Assert.assertEquals("looking", parses.get(1).getRoot().getTarget().getSurface());
+	}
+
+	@Test
+	public void testNeuralBackend() {
+		parser = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC, StanfordParserWrapper.Backend.NEURAL);
+		parser.initialize();
+
+		DependencyGraph parse = parser.parse("The cat runs on the grass.");
+		Assert.assertEquals(7, parse.getNodes().size());
+		Assert.assertEquals(7, parse.getRelations().size());
+		Assert.assertEquals("root", parse.getRoot().getType());
+		Assert.assertEquals("runs", parse.getRoot().getTarget().getSurface());
+		for (DGRelation dgRelation : parse.getRelations()) {
+			if (dgRelation.getType().equals("nsubj")) {
+				Assert.assertEquals("runs", dgRelation.getSource().getSurface());
+				Assert.assertEquals("cat", dgRelation.getTarget().getSurface());
+			}
+		}
+	}
+
+	@Test
+	public void testPipelineRegistry() {
+		Properties props = new Properties();
+		props.put("annotators", "tokenize, ssplit");
+		Assert.assertFalse(StanfordPipelineRegistry.isLoaded(props));
+
+		StanfordCoreNLP first = StanfordPipelineRegistry.acquire(props);
+		StanfordCoreNLP second = StanfordPipelineRegistry.acquire(props);
+		Assert.assertSame(first, second);
+		Assert.assertEquals(2, StanfordPipelineRegistry.getReferenceCount(props));
+
+		StanfordPipelineRegistry.release(props);
+		Assert.assertTrue(StanfordPipelineRegistry.isLoaded(props));
+		StanfordPipelineRegistry.release(props);
+		Assert.assertFalse(StanfordPipelineRegistry.isLoaded(props));
+
+		StanfordPipelineRegistry.warmUp(props);
+		Assert.assertTrue(StanfordPipelineRegistry.isLoaded(props));
+		Assert.assertEquals(0, StanfordPipelineRegistry.getReferenceCount(props));
+		StanfordPipelineRegistry.clear();
+		Assert.assertFalse(StanfordPipelineRegistry.isLoaded(props));
+	}
+
+	/**
+	 * An annotator whose first instance fails to load after the test lets it.
+	 */
+	public static class FlakyAnnotator implements Annotator {
+		static final AtomicInteger INSTANCES = new AtomicInteger();
+		static final CountDownLatch FAIL = new CountDownLatch(1);
+
+		public FlakyAnnotator(String name, Properties props) {
+			if (INSTANCES.getAndIncrement() == 0) {
+				try {
+					FAIL.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new IllegalStateException("flaky");
+			}
+		}
+
+		@Override
+		public void annotate(Annotation annotation) {
+		}
+
+		@Override
+		public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public Set<Class<? extends CoreAnnotation>> requires() {
+			return Collections.emptySet();
+		}
+	}
+
+	@Test
+	public void testPipelineRegistryLoadFailure() throws InterruptedException {
+		final Properties props = new Properties();
+		props.put("annotators", "flaky");
+		props.put("customAnnotatorClass.flaky", FlakyAnnotator.class.getName());
+
+		// the first acquirer fails while the second one waits for the pipeline
+		final List<RuntimeException> failures = new ArrayList<RuntimeException>();
+		Thread failing = new Thread() {
+			@Override
+			public void run() {
+				try {
+					StanfordPipelineRegistry.acquire(props);
+				} catch (RuntimeException e) {
+					failures.add(e);
+				}
+			}
+		};
+		failing.start();
+		while (FlakyAnnotator.INSTANCES.get() == 0)
+			Thread.sleep(10);
+		Thread waiting = new Thread() {
+			@Override
+			public void run() {
+				StanfordPipelineRegistry.acquire(props);
+			}
+		};
+		waiting.start();
+		while (StanfordPipelineRegistry.getReferenceCount(props) < 2)
+			Thread.sleep(10);
+		FlakyAnnotator.FAIL.countDown();
+		failing.join();
+		waiting.join();
+
+		Assert.assertEquals(1, failures.size());
+		Assert.assertTrue(StanfordPipelineRegistry.isLoaded(props));
+		Assert.assertEquals(1, StanfordPipelineRegistry.getReferenceCount(props));
+		StanfordPipelineRegistry.release(props);
+		Assert.assertFalse(StanfordPipelineRegistry.isLoaded(props));
+	}
+
+	@Test
+	public void testSentenceBudget() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.initialize();
+		String sentence = "The cat runs on the grass.";
+		DependencyGraph unguarded = wrapper.parse(sentence);
+
+		wrapper.setMaxTokens(7);
+		DependencyGraph guarded = wrapper.parse(sentence);
+		Assert.assertEquals(unguarded.getRelations().size(), guarded.getRelations().size());
+		for (int i = 0; i < unguarded.getRelations().size(); i++)
+			Assert.assertEquals(unguarded.getRelations().get(i).getType(), guarded.getRelations().get(i).getType());
+
+		wrapper.setMaxTokens(4);
+		Assert.assertNull(wrapper.parse(sentence));
+		Assert.assertEquals(1, wrapper.getStatistics().getTooLongCount());
+		Assert.assertEquals(1, wrapper.getStatistics().getSkippedCount());
+
+		wrapper.setFallback(StanfordParserWrapper.Fallback.TRUNCATE);
+		DependencyGraph truncated = wrapper.parse(sentence);
+		Assert.assertEquals(4, truncated.getNodes().size());
+		Assert.assertEquals("on", truncated.getNodes().get(3).getSurface());
+		Assert.assertEquals(1, wrapper.getStatistics().getTruncatedCount());
+
+		wrapper.setFallback(StanfordParserWrapper.Fallback.BACKEND);
+		List<DependencyGraph> graphs = wrapper.parseAll(Arrays.asList(sentence, "A dog barks."));
+		Assert.assertEquals(7, graphs.get(0).getNodes().size());
+		Assert.assertEquals("runs", graphs.get(0).getRoot().getTarget().getSurface());
+		Assert.assertEquals(4, graphs.get(1).getNodes().size());
+		Assert.assertEquals(1, wrapper.getStatistics().getFallbackCount());
+		Assert.assertEquals(6, wrapper.getStatistics().getSentenceCount());
+	}
+
+	@Test
+	public void testTimeout() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.initialize();
+		StringBuilder sentence = new StringBuilder();
+		for (int i = 0; i < 40; i++)
+			sentence.append("the old man saw the dog with the telescope and ");
+		sentence.append("left.");
+
+		wrapper.setTimeout(1);
+		long start = System.currentTimeMillis();
+		Assert.assertNull(wrapper.parse(sentence.toString()));
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+		Assert.assertEquals(1, wrapper.getStatistics().getTimeoutCount());
+		Assert.assertFalse(Thread.currentThread().isInterrupted());
+
+		wrapper.setFallback(StanfordParserWrapper.Fallback.BACKEND);
+		DependencyGraph graph = wrapper.parse(sentence.toString());
+		Assert.assertEquals(graph.getNodes().size(), graph.getRelations().size());
+		Assert.assertEquals(1, wrapper.getStatistics().getFallbackCount());
+	}
+
+	@Test
+	public void testInterruptWithinTimeout() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.initialize();
+		wrapper.setTimeout(60000);
+		List<String> tokens = Arrays.asList("The", "cat", "runs", ".");
+		List<String> tags = Arrays.asList("DT", "NN", "VBZ", ".");
+		List<String> lemmas = Arrays.asList("the", "cat", "run", ".");
+		Assert.assertNotNull(wrapper.parseTokens(tokens, tags, lemmas));
+
+		// an interrupt not raised by the timeout, e.g. a cancellation, is not
+		// taken for a timeout and reaches the caller
+		Thread.currentThread().interrupt();
+		try {
+			wrapper.parseTokens(tokens, tags, lemmas);
+			Assert.fail();
+		} catch (RuntimeInterruptedException e) {
+			Assert.assertTrue(Thread.currentThread().isInterrupted());
+		} finally {
+			Thread.interrupted();
+		}
+		Assert.assertEquals(0, wrapper.getStatistics().getTimeoutCount());
+	}
+
+	@Test
+	public void testParseAllDependencyTypes() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.initialize();
+		String sentence = "The cat runs on the grass.";
+		Map<DEPENDENCY_TYPE, DependencyGraph> graphs = wrapper.parse(sentence, EnumSet.allOf(DEPENDENCY_TYPE.class));
+		Assert.assertEquals(3, graphs.size());
+		Assert.assertEquals(1, wrapper.getStatistics().getSentenceCount());
+		Assert.assertEquals(3, wrapper.getStatistics().getConversionCount());
+		Assert.assertTrue(wrapper.getStatistics().getAnnotationTime() > wrapper.getStatistics().getConversionTime());
+
+		DependencyGraph basic = wrapper.parse(sentence);
+		List<String> basicTypes = new ArrayList<String>();
+		for (DGRelation relation : basic.getRelations())
+			basicTypes.add(relation.getType());
+		List<String> types = new ArrayList<String>();
+		for (DGRelation relation : graphs.get(DEPENDENCY_TYPE.BASIC).getRelations())
+			types.add(relation.getType());
+		Assert.assertEquals(basicTypes, types);
+
+		boolean collapsed = false;
+		for (DGRelation relation : graphs.get(DEPENDENCY_TYPE.COLLAPSED).getRelations())
+			collapsed |= relation.getType().equals("nmod:on");
+		Assert.assertTrue(collapsed);
+		Assert.assertNotSame(graphs.get(DEPENDENCY_TYPE.BASIC).getNodes().get(0),
+				graphs.get(DEPENDENCY_TYPE.COLLAPSED).getNodes().get(0));
+
+		List<Map<DEPENDENCY_TYPE, DependencyGraph>> batch = wrapper.parseAll(Arrays.asList(sentence, "A dog barks."),
+				EnumSet.of(DEPENDENCY_TYPE.BASIC, DEPENDENCY_TYPE.COLLAPSED_CCPROCESSED));
+		Assert.assertEquals(2, batch.size());
+		Assert.assertEquals(2, batch.get(1).size());
+		Assert.assertEquals("barks", batch.get(1).get(DEPENDENCY_TYPE.COLLAPSED_CCPROCESSED).getRoot().getTarget()
+				.getSurface());
+	}
+
+	@Test
+	public void testConstituencyTree() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.setKeepConstituencyTree(true);
+		wrapper.initialize();
+		DependencyGraph graph = wrapper.parse("The cat runs on the grass.");
+		ConstituencyNode tree = graph.getConstituencyTree();
+		Assert.assertNotNull(tree);
+		Assert.assertTrue(tree.toString().startsWith("(ROOT (S (NP (DT The) (NN cat))"));
+
+		ConstituencyNode cat = tree.getChildren().get(0).getChildren().get(0).getChildren().get(1).getChildren().get(0);
+		Assert.assertSame(graph.getNodes().get(1), cat.getToken());
+
+		TreeRepresentation representation = TreeRepresentationGenerator.constituencyGenerator(graph,
+				new LemmaCompactPOSLabelGeneratorLowerCase(), new OriginalPOSLabelGenerator());
+		String text = representation.getTextFromData();
+		Assert.assertTrue(text.startsWith("(SYNT##ROOT(SYNT##S(SYNT##NP(POS##DT(LEX##the::d))(POS##NN(LEX##cat::n)))"));
+
+		wrapper.setKeepConstituencyTree(false);
+		Assert.assertNull(wrapper.parse("The cat runs on the grass.").getConstituencyTree());
+	}
+
+	@Test
+	public void testParseTokens() {
+		StanfordParserWrapper wrapper = new StanfordParserWrapper(DEPENDENCY_TYPE.BASIC);
+		wrapper.initialize();
+		String sentence = "The cat runs on the grass.";
+		DependencyGraph expected = wrapper.parse(sentence);
+		List<String> tokens = Arrays.asList("The", "cat", "runs", "on", "the", "grass", ".");
+
+		DependencyGraph graph = wrapper.parseTokens(sentence, tokens, null, null);
+		Assert.assertEquals(expected.getNodes().size(), graph.getNodes().size());
+		for (int i = 0; i < tokens.size(); i++) {
+			DGNode node = graph.getNodes().get(i);
+			DGNode expectedNode = expected.getNodes().get(i);
+			Assert.assertEquals(expectedNode.getLemma(), node.getLemma());
+			Assert.assertEquals(expectedNode.getPos(), node.getPos());
+			Assert.assertEquals(expectedNode.getStart(), node.getStart());
+			Assert.assertEquals(expectedNode.getEnd(), node.getEnd());
+		}
+		Assert.assertEquals("runs", graph.getRoot().getTarget().getSurface());
+
+		// the supplied tags and lemmas are kept
+		List<String> tags = Arrays.asList("DT", "NN", "VBZ", "IN", "DT", "NN", ".");
+		List<String> lemmas = Arrays.asList("the", "cat", "RUN", "on", "the", "grass", ".");
+		graph = wrapper.parseTokens(tokens, tags, lemmas);
+		Assert.assertEquals("The cat runs on the grass .", graph.getSentence());
+		Assert.assertEquals("RUN", graph.getNodes().get(2).getLemma());
+		Assert.assertEquals(26, graph.getNodes().get(6).getStart());
+		Assert.assertEquals(graph.getNodes().size(), graph.getRelations().size());
+		Assert.assertEquals("runs", graph.getRoot().getTarget().getSurface());
+
+		graph = wrapper.parseTokens(tokens, tags, null);
+		Assert.assertEquals("run", graph.getNodes().get(2).getLemma());
+
+		try {
+			wrapper.parseTokens(sentence, Arrays.asList("The", "dog"), null, null);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
 }
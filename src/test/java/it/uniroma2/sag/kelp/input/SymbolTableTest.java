@@ -0,0 +1,95 @@
+package it.uniroma2.sag.kelp.input;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.input.corpus.ColumnarCorpus;
+import it.uniroma2.sag.kelp.input.parser.impl.ConllUReader;
+import it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper;
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.SymbolTable;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+
+public class SymbolTableTest {
+
+	@Test
+	public void testIntern() {
+		SymbolTable table = new SymbolTable();
+		String first = table.intern(new String("nsubj"));
+		String second = table.intern(new String("nsubj"));
+		Assert.assertSame(first, second);
+		Assert.assertEquals(0, table.getId("nsubj"));
+		Assert.assertEquals(SymbolTable.NO_ID, table.getId("dobj"));
+		Assert.assertEquals(1, table.add("dobj"));
+		Assert.assertEquals("dobj", table.getSymbol(1));
+		Assert.assertNull(table.intern(null));
+	}
+
+	@Test
+	public void testInternGrowsTable() {
+		SymbolTable table = new SymbolTable();
+		for (int i = 0; i < 1000; i++)
+			Assert.assertEquals("s" + i, table.intern(new String("s" + i)));
+		Assert.assertEquals(1000, table.size());
+		for (int i = 0; i < 1000; i++)
+			Assert.assertSame(table.getSymbol(i), table.intern(new String("s" + i)));
+	}
+
+	@Test
+	public void testGeneratorTable() {
+		SymbolTable table = new SymbolTable();
+		LemmaCompactPOSLabelGeneratorLowerCase generator = new LemmaCompactPOSLabelGeneratorLowerCase(table);
+		DGNode node = new DGNode();
+		node.setLemma("Cat");
+		node.setPos("NN");
+		String lemma = generator.getLemmaLabelOf(node, null);
+		Assert.assertEquals("cat", lemma);
+		Assert.assertSame(table.getSymbol(table.getId("cat")), lemma);
+		Assert.assertEquals("n", generator.getPosLabelOf(node, null));
+		Assert.assertEquals(2, table.size());
+	}
+
+	@Test
+	public void testNoProcessWideTable() {
+		// labels are interned only in the tables of the callers and corpora
+		Assert.assertNull(new StanfordParserWrapper().getSymbolTable());
+		Assert.assertNull(new ConllUReader().getSymbolTable());
+		Assert.assertNotSame(new ColumnarCorpus().getSymbolTable(), new ColumnarCorpus().getSymbolTable());
+
+		DGNode node = new DGNode();
+		node.setLemma("Cat");
+		Assert.assertEquals("cat", new LemmaCompactPOSLabelGeneratorLowerCase().getLemmaLabelOf(node, null));
+	}
+
+	@Test
+	public void testConcurrentAdd() throws InterruptedException {
+		final SymbolTable table = new SymbolTable();
+		final int symbols = 5000;
+		final AtomicInteger errors = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < symbols; i++) {
+						int id = table.add("s" + i);
+						if (!table.getSymbol(id).equals("s" + i))
+							errors.incrementAndGet();
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Assert.assertEquals(0, errors.get());
+		Assert.assertEquals(symbols, table.size());
+		for (int i = 0; i < symbols; i++)
+			Assert.assertEquals("s" + i, table.getSymbol(table.getId("s" + i)));
+	}
+}
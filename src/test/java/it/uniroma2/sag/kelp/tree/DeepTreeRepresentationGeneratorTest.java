@@ -0,0 +1,112 @@
+package it.uniroma2.sag.kelp.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
+import it.uniroma2.sag.kelp.data.representation.tree.node.TreeNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeFormat;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.RelationNameLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+public class DeepTreeRepresentationGeneratorTest {
+	private SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+	private LexicalElementLabelGenerator ng = new LemmaCompactPOSLabelGeneratorLowerCase();
+	private PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+
+	private static int depth(TreeNode root) {
+		int depth = 0;
+		ArrayDeque<TreeNode> level = new ArrayDeque<TreeNode>();
+		level.add(root);
+		while (!level.isEmpty()) {
+			depth++;
+			ArrayDeque<TreeNode> next = new ArrayDeque<TreeNode>();
+			for (TreeNode node : level)
+				next.addAll(node.getChildren());
+			level = next;
+		}
+		return depth;
+	}
+
+	@Test
+	public void testDeepGraph() {
+		int length = 100000;
+		DependencyGraph graph = TestGraphs.chain(length);
+		Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(graph,
+				EnumSet.allOf(TreeFormat.class), rg, ng, ig);
+		Assert.assertEquals(length, depth(representations.get(TreeFormat.LOCT).getRoot()));
+		Assert.assertEquals(length + 1, depth(representations.get(TreeFormat.LCT).getRoot()));
+		Assert.assertEquals(length + 2, depth(representations.get(TreeFormat.GRCT).getRoot()));
+		Assert.assertEquals(length + 2, depth(representations.get(TreeFormat.CGRCT).getRoot()));
+		Assert.assertEquals(length + 1, depth(representations.get(TreeFormat.CLCT).getRoot()));
+	}
+
+	@Test
+	public void testShallowGraph() {
+		DependencyGraph graph = TestGraphs.chain(3);
+		Assert.assertEquals(
+				"(SYNT##root(POS##NN(LEX##word::n))(SYNT##conj(POS##NN(LEX##word::n))(SYNT##conj(POS##NN(LEX##word::n)))))",
+				TreeRepresentationGenerator.grctGenerator(graph, rg, ng, ig).getTextFromData());
+		Assert.assertEquals("(LEX##word::n(LEX##word::n(LEX##word::n)))",
+				TreeRepresentationGenerator.loctGenerator(graph, rg, ng, ig).getTextFromData());
+	}
+
+	@Test
+	public void testSelfLoop() {
+		DependencyGraph graph = TestGraphs.chain(3);
+		// the last token depends on itself
+		TestGraphs.addSelfLoop(graph, 2);
+
+		Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(graph,
+				EnumSet.allOf(TreeFormat.class), rg, ng, ig);
+		Assert.assertEquals("(SYNT##root(POS##NN(LEX##word::n))(SYNT##conj(POS##NN(LEX##word::n))))",
+				representations.get(TreeFormat.GRCT).getTextFromData());
+		Assert.assertEquals("(LEX##word::n(LEX##word::n(LEX##word::n)))",
+				representations.get(TreeFormat.LOCT).getTextFromData());
+		for (TreeRepresentation representation : representations.values()) {
+			// the ids are still contiguous in pre-order
+			TreeNode root = representation.getRoot();
+			int id = 0;
+			ArrayDeque<TreeNode> stack = new ArrayDeque<TreeNode>();
+			stack.push(root);
+			while (!stack.isEmpty()) {
+				TreeNode node = stack.pop();
+				Assert.assertEquals(++id, node.getId());
+				for (int i = node.getChildren().size() - 1; i >= 0; i--)
+					stack.push(node.getChildren().get(i));
+			}
+			Assert.assertEquals(id, TreeRepresentationGenerator.getNumberOfNodes(root));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCycle() {
+		DependencyGraph graph = TestGraphs.chain(4);
+		// the second token depends on the last one
+		DGRelation relation = graph.getRelations().get(1);
+		relation.setSource(graph.getNodes().get(3));
+		relation.setFromId(4);
+		List<DGRelation> relations = new ArrayList<DGRelation>(graph.getRelations());
+		DGRelation back = new DGRelation();
+		back.setSource(graph.getNodes().get(0));
+		back.setTarget(graph.getNodes().get(1));
+		back.setFromId(1);
+		back.setType("conj");
+		relations.add(back);
+		graph.setRelations(relations);
+		TreeRepresentationGenerator.lctGenerator(graph, rg, ng, ig);
+	}
+}
@@ -0,0 +1,141 @@
+package it.uniroma2.sag.kelp.tree;
+
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ie.machinereading.RelationFeatureFactory.DEPENDENCY_TYPE;
+import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
+import it.uniroma2.sag.kelp.data.representation.tree.node.TreeNode;
+import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper;
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeFormat;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.TreeTextWriter;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.RelationNameLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+public class MultiTreeRepresentationGeneratorTest {
+	private String testSentence1 = "The cat runs over the grass.";
+	private String testSentence2 = "Yesterday, I was at the sea looking for a shell.";
+
+	private static class CountingLabelGenerator extends LemmaCompactPOSLabelGeneratorLowerCase {
+		private int lemmas;
+
+		@Override
+		public String getLemmaLabelOf(DGNode node, DependencyGraph g) {
+			lemmas++;
+			return super.getLemmaLabelOf(node, g);
+		}
+	}
+
+	@Test
+	public void testAllFormats() {
+		DependencyParser parser = new StanfordParserWrapper(DEPENDENCY_TYPE.COLLAPSED);
+		parser.initialize();
+
+		SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+		LexicalElementLabelGenerator ng = new LemmaCompactPOSLabelGeneratorLowerCase();
+		PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+		for (String sentence : new String[] { testSentence1, testSentence2 }) {
+			DependencyGraph parse = parser.parse(sentence);
+			Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(parse,
+					EnumSet.allOf(TreeFormat.class), rg, ng, ig);
+			Assert.assertEquals(5, representations.size());
+			Assert.assertEquals(TreeRepresentationGenerator.grctGenerator(parse, rg, ng, ig).getTextFromData(),
+					representations.get(TreeFormat.GRCT).getTextFromData());
+			Assert.assertEquals(TreeRepresentationGenerator.lctGenerator(parse, rg, ng, ig).getTextFromData(),
+					representations.get(TreeFormat.LCT).getTextFromData());
+			Assert.assertEquals(TreeRepresentationGenerator.loctGenerator(parse, rg, ng, ig).getTextFromData(),
+					representations.get(TreeFormat.LOCT).getTextFromData());
+			Assert.assertEquals(TreeRepresentationGenerator.cgrctGenerator(parse, rg, ng, ig).getTextFromData(),
+					representations.get(TreeFormat.CGRCT).getTextFromData());
+			Assert.assertEquals(TreeRepresentationGenerator.clctGenerator(parse, rg, ng, ig).getTextFromData(),
+					representations.get(TreeFormat.CLCT).getTextFromData());
+		}
+
+		DependencyGraph parse = parser.parse(testSentence1);
+		Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(parse,
+				EnumSet.of(TreeFormat.LCT, TreeFormat.CLCT), rg, ng, ig);
+		Assert.assertEquals(EnumSet.of(TreeFormat.LCT, TreeFormat.CLCT), representations.keySet());
+		Assert.assertTrue(TreeRepresentationGenerator
+				.generate(parse, EnumSet.noneOf(TreeFormat.class), rg, ng, ig).isEmpty());
+	}
+
+	@Test
+	public void testLabelsAreComputedOnce() {
+		DependencyParser parser = new StanfordParserWrapper();
+		parser.initialize();
+		DependencyGraph parse = parser.parse(testSentence1);
+
+		CountingLabelGenerator ng = new CountingLabelGenerator();
+		SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+		PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+		Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(parse,
+				EnumSet.allOf(TreeFormat.class), rg, ng, ig);
+		int n = parse.getNodes().size();
+		Assert.assertEquals(n, ng.lemmas);
+
+		// the labels of a mutable graph are computed by every invocation
+		Assert.assertEquals(representations.get(TreeFormat.LCT).getTextFromData(),
+				TreeRepresentationGenerator.lctGenerator(parse, rg, ng, ig).getTextFromData());
+		Assert.assertEquals(2 * n, ng.lemmas);
+		// and reflect the changes to the graph
+		parse.getNodes().get(0).setLemma("A");
+		Assert.assertTrue(TreeRepresentationGenerator.lctGenerator(parse, rg, ng, ig).getTextFromData()
+				.contains("(LEX##a::d"));
+		Assert.assertEquals(3 * n, ng.lemmas);
+
+		// while the labels of a frozen graph are cached in the graph
+		parse.freeze();
+		TreeRepresentationGenerator.lctGenerator(parse, rg, ng, ig);
+		Assert.assertEquals(4 * n, ng.lemmas);
+		TreeRepresentationGenerator.grctGenerator(parse, rg, ng, ig);
+		new TreeTextWriter(rg, ng, ig).toText(parse, TreeFormat.CLCT);
+		Assert.assertEquals(4 * n, ng.lemmas);
+
+		// only the labels of the last generators used are kept
+		CountingLabelGenerator other = new CountingLabelGenerator();
+		TreeRepresentationGenerator.lctGenerator(parse, rg, other, ig);
+		TreeRepresentationGenerator.lctGenerator(parse, rg, other, ig);
+		Assert.assertEquals(n, other.lemmas);
+		TreeRepresentationGenerator.lctGenerator(parse, rg, ng, ig);
+		Assert.assertEquals(5 * n, ng.lemmas);
+	}
+
+	@Test
+	public void testPreOrderIds() {
+		DependencyParser parser = new StanfordParserWrapper(DEPENDENCY_TYPE.COLLAPSED_CCPROCESSED);
+		parser.initialize();
+		DependencyGraph parse = parser.parse(testSentence2);
+		Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(parse,
+				EnumSet.allOf(TreeFormat.class), new RelationNameLabelGenerator(),
+				new LemmaCompactPOSLabelGeneratorLowerCase(), new OriginalPOSLabelGenerator());
+		for (TreeRepresentation representation : representations.values()) {
+			TreeNode root = representation.getRoot();
+			Assert.assertNull(root.getFather());
+			int id = 0;
+			ArrayDeque<TreeNode> stack = new ArrayDeque<TreeNode>();
+			stack.push(root);
+			while (!stack.isEmpty()) {
+				TreeNode node = stack.pop();
+				Assert.assertEquals(++id, node.getId());
+				for (int i = node.getChildren().size() - 1; i >= 0; i--) {
+					TreeNode child = node.getChildren().get(i);
+					Assert.assertSame(node, child.getFather());
+					stack.push(child);
+				}
+			}
+			Assert.assertEquals(id, TreeRepresentationGenerator.getNumberOfNodes(root));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package it.uniroma2.sag.kelp.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.uniroma2.sag.kelp.input.parser.model.DGNode;
+import it.uniroma2.sag.kelp.input.parser.model.DGRelation;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+
+/**
+ * Dependency graphs built by hand for the tests of the tree generators.
+ */
+final class TestGraphs {
+
+	private TestGraphs() {
+	}
+
+	/**
+	 * A chain where every token depends on the previous one, e.g. a very long
+	 * coordination.
+	 */
+	static DependencyGraph chain(int length) {
+		List<DGNode> nodes = new ArrayList<DGNode>(length);
+		List<DGRelation> relations = new ArrayList<DGRelation>(length);
+		for (int i = 1; i <= length; i++) {
+			DGNode node = new DGNode();
+			node.setId(i);
+			node.setSurface("word");
+			node.setLemma("word");
+			node.setPos("NN");
+			node.setStart(5 * (i - 1));
+			node.setEnd(5 * (i - 1) + 4);
+			nodes.add(node);
+
+			DGRelation relation = new DGRelation();
+			relation.setTarget(node);
+			if (i == 1) {
+				relation.setType("root");
+			} else {
+				relation.setSource(nodes.get(i - 2));
+				relation.setFromId(i - 1);
+				relation.setType("conj");
+			}
+			relations.add(relation);
+		}
+		DependencyGraph graph = new DependencyGraph();
+		graph.setNodes(nodes);
+		graph.setRelations(relations);
+		graph.setRoot(relations.get(0));
+		return graph;
+	}
+
+	/**
+	 * Makes the i-th token of a graph depend on itself.
+	 */
+	static void addSelfLoop(DependencyGraph graph, int i) {
+		List<DGRelation> relations = new ArrayList<DGRelation>(graph.getRelations());
+		DGNode node = graph.getNodes().get(i);
+		DGRelation loop = new DGRelation();
+		loop.setSource(node);
+		loop.setTarget(node);
+		loop.setFromId(node.getId());
+		loop.setType("dep");
+		relations.add(loop);
+		graph.setRelations(relations);
+	}
+}
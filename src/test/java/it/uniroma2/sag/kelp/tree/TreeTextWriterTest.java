@@ -0,0 +1,106 @@
+package it.uniroma2.sag.kelp.tree;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.stanford.nlp.ie.machinereading.RelationFeatureFactory.DEPENDENCY_TYPE;
+import it.uniroma2.sag.kelp.data.representation.tree.TreeRepresentation;
+import it.uniroma2.sag.kelp.input.parser.DependencyParser;
+import it.uniroma2.sag.kelp.input.parser.impl.StanfordParserWrapper;
+import it.uniroma2.sag.kelp.input.parser.model.DependencyGraph;
+import it.uniroma2.sag.kelp.input.tree.TreeFormat;
+import it.uniroma2.sag.kelp.input.tree.TreeRepresentationGenerator;
+import it.uniroma2.sag.kelp.input.tree.TreeTextWriter;
+import it.uniroma2.sag.kelp.input.tree.generators.LemmaCompactPOSLabelGeneratorLowerCase;
+import it.uniroma2.sag.kelp.input.tree.generators.LexicalElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.OriginalPOSLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.PosElementLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.RelationNameLabelGenerator;
+import it.uniroma2.sag.kelp.input.tree.generators.SyntElementLabelGenerator;
+
+public class TreeTextWriterTest {
+	private String[] testSentences = { "The cat runs over the grass.",
+			"Yesterday, I was at the sea looking for a shell.",
+			"John and Mary bought apples, pears and bananas in Rome and Paris.", "Go!" };
+
+	@Test
+	public void testSameTextAsTreeRepresentations() throws IOException {
+		SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+		LexicalElementLabelGenerator ng = new LemmaCompactPOSLabelGeneratorLowerCase();
+		PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+		TreeTextWriter writer = new TreeTextWriter(rg, ng, ig);
+
+		for (DEPENDENCY_TYPE type : DEPENDENCY_TYPE.values()) {
+			DependencyParser parser = new StanfordParserWrapper(type);
+			parser.initialize();
+			for (String sentence : testSentences) {
+				DependencyGraph parse = parser.parse(sentence);
+				Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(parse,
+						EnumSet.allOf(TreeFormat.class), rg, ng, ig);
+				// a Writer and any other Appendable
+				StringWriter out = new StringWriter();
+				StringBuilder appended = new StringBuilder();
+				StringBuilder expected = new StringBuilder();
+				for (TreeFormat format : TreeFormat.values()) {
+					String text = representations.get(format).getTextFromData();
+					Assert.assertEquals(text, writer.toText(parse, format));
+					writer.write(parse, format, out);
+					writer.write(parse, format, appended);
+					expected.append(text);
+				}
+				Assert.assertEquals(expected.toString(), out.toString());
+				Assert.assertEquals(expected.toString(), appended.toString());
+			}
+		}
+	}
+
+	@Test
+	public void testDeepGraph() {
+		int length = 100000;
+		DependencyGraph graph = TestGraphs.chain(length);
+
+		TreeTextWriter writer = new TreeTextWriter(new RelationNameLabelGenerator(),
+				new LemmaCompactPOSLabelGeneratorLowerCase(), new OriginalPOSLabelGenerator());
+		String text = writer.toText(graph, TreeFormat.LOCT);
+		Assert.assertEquals(length * "(LEX##word::n)".length(), text.length());
+		Assert.assertTrue(text.startsWith("(LEX##word::n(LEX##word::n"));
+		String grct = writer.toText(graph, TreeFormat.GRCT);
+		Assert.assertTrue(grct.startsWith("(SYNT##root(POS##NN(LEX##word::n))(SYNT##conj"));
+		// the deepest leaf is followed by the ends of all its ancestors
+		String leaf = "(SYNT##conj(POS##NN(LEX##word::n)))";
+		Assert.assertEquals(grct.length() - (length - 1), grct.lastIndexOf(leaf) + leaf.length());
+	}
+
+	@Test
+	public void testSelfLoop() {
+		SyntElementLabelGenerator rg = new RelationNameLabelGenerator();
+		LexicalElementLabelGenerator ng = new LemmaCompactPOSLabelGeneratorLowerCase();
+		PosElementLabelGenerator ig = new OriginalPOSLabelGenerator();
+		TreeTextWriter writer = new TreeTextWriter(rg, ng, ig);
+
+		// the subtree of the second token is dropped from the GRCTs
+		DependencyGraph graph = TestGraphs.chain(3);
+		TestGraphs.addSelfLoop(graph, 1);
+		Map<TreeFormat, TreeRepresentation> representations = TreeRepresentationGenerator.generate(graph,
+				EnumSet.allOf(TreeFormat.class), rg, ng, ig);
+		for (TreeFormat format : TreeFormat.values())
+			Assert.assertEquals(representations.get(format).getTextFromData(), writer.toText(graph, format));
+		Assert.assertEquals("(SYNT##root(POS##NN(LEX##word::n)))", writer.toText(graph, TreeFormat.GRCT));
+
+		// the GRCTs of a root depending on itself are null
+		graph = TestGraphs.chain(2);
+		TestGraphs.addSelfLoop(graph, 0);
+		Assert.assertEquals("(LEX##word::n(LEX##word::n))", writer.toText(graph, TreeFormat.LOCT));
+		try {
+			writer.toText(graph, TreeFormat.CGRCT);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}